@@ -0,0 +1,87 @@
+package ro.ubbcluj.cs.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.ubbcluj.cs.ann.impl.FloatNeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inference: one sample at a time and whole batches, double and float
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeedForwardBenchmark {
+
+    private static final int BATCH = 1024;
+
+    @Param({"50", "300"})
+    public int hidden;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private NeuralNetwork neuralNetwork;
+    private FloatNeuralNetwork floatNeuralNetwork;
+    private double[][] inputs;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        neuralNetwork = new NeuralNetworkBuilder()
+                .havingSizes(SyntheticData.INPUTS, hidden, SyntheticData.CLASSES)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .withThreads(threads)
+                .withSeed(SyntheticData.SEED)
+                .build();
+        floatNeuralNetwork = new FloatNeuralNetwork(neuralNetwork);
+        inputs = SyntheticData.features(BATCH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        neuralNetwork.close();
+    }
+
+    private double[] nextInput() {
+        next = (next + 1) % BATCH;
+        return inputs[next];
+    }
+
+    @Benchmark
+    public double[] feedForward() {
+        return neuralNetwork.feedForward(nextInput());
+    }
+
+    @Benchmark
+    public int classify() {
+        return neuralNetwork.classify(nextInput());
+    }
+
+    @Benchmark
+    public int classifyFloat() {
+        return floatNeuralNetwork.classify(nextInput());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] classifyBatch() {
+        return neuralNetwork.classifyBatch(inputs);
+    }
+}
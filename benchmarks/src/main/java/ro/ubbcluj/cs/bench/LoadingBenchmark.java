@@ -0,0 +1,81 @@
+package ro.ubbcluj.cs.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.ubbcluj.cs.io.Dataset;
+import ro.ubbcluj.cs.io.DigitImageLoadingService;
+import ro.ubbcluj.cs.io.MiniBatch;
+import ro.ubbcluj.cs.io.StreamingBatchSource;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IDX loading of a 10k-sample synthetic file pair, the shape of the MNIST test set
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingBenchmark {
+
+    private static final int SAMPLES = 10000;
+
+    private Path directory;
+    private DigitImageLoadingService service;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("idx-bench");
+        final Path labels = directory.resolve("labels-idx1-ubyte");
+        final Path images = directory.resolve("images-idx3-ubyte");
+        SyntheticData.writeIdx(labels, images, SAMPLES);
+        service = new DigitImageLoadingService(labels.toString(), images.toString(), 1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (String name : new String[]{"labels-idx1-ubyte", "images-idx3-ubyte"}) {
+            Files.deleteIfExists(directory.resolve(name));
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public List<TrainingExample> loadDigitImages() throws IOException {
+        return service.loadDigitImages();
+    }
+
+    @Benchmark
+    public Dataset loadDataset() throws IOException {
+        return service.loadDataset();
+    }
+
+    @Benchmark
+    public int streamBatches() throws IOException {
+        int samples = 0;
+        try (StreamingBatchSource source = service.streamBatches(64, 8)) {
+            MiniBatch batch;
+            while ((batch = source.next()) != null) {
+                samples += batch.size();
+                source.release(batch);
+            }
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,72 @@
+package ro.ubbcluj.cs.bench;
+
+import ro.ubbcluj.cs.io.Dataset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Random MNIST-shaped samples, so the benchmarks do not depend on the bundled files
+ * <p>
+ * As in MNIST, about 80% of the pixels are zeros.
+ */
+final class SyntheticData {
+
+    static final int ROWS = 28;
+    static final int COLUMNS = 28;
+    static final int INPUTS = ROWS * COLUMNS;
+    static final int CLASSES = 10;
+    static final long SEED = 1234;
+    static final double ZERO_PIXELS = 0.8;
+
+    private SyntheticData() {
+    }
+
+    static byte[] pixels(final Random random, final int samples) {
+        final byte[] pixels = new byte[samples * INPUTS];
+        random.nextBytes(pixels);
+        for (int i = 0; i < pixels.length; ++i) {
+            if (random.nextDouble() < ZERO_PIXELS) {
+                pixels[i] = 0;
+            }
+        }
+        return pixels;
+    }
+
+    static byte[] labels(final Random random, final int samples) {
+        final byte[] labels = new byte[samples];
+        for (int i = 0; i < samples; ++i) {
+            labels[i] = (byte) random.nextInt(CLASSES);
+        }
+        return labels;
+    }
+
+    static Dataset dataset(final int samples) {
+        final Random random = new Random(SEED);
+        return new Dataset(pixels(random, samples), labels(random, samples), INPUTS, CLASSES, 1);
+    }
+
+    static double[][] features(final int samples) {
+        final Dataset dataset = dataset(samples);
+        final double[][] features = new double[samples][INPUTS];
+        for (int i = 0; i < samples; ++i) {
+            dataset.getFeatures(i, features[i]);
+        }
+        return features;
+    }
+
+    /**
+     * Writes an IDX label file and an IDX image file
+     */
+    static void writeIdx(final Path labelFile, final Path imageFile, final int samples) throws IOException {
+        final Random random = new Random(SEED);
+        final ByteBuffer labels = ByteBuffer.allocate(8 + samples).putInt(2049).putInt(samples).put(labels(random, samples));
+        Files.write(labelFile, labels.array());
+        final ByteBuffer images = ByteBuffer.allocate(16 + samples * INPUTS)
+                .putInt(2051).putInt(samples).putInt(ROWS).putInt(COLUMNS).put(pixels(random, samples));
+        Files.write(imageFile, images.array());
+    }
+}
@@ -0,0 +1,97 @@
+package ro.ubbcluj.cs.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder;
+import ro.ubbcluj.cs.io.Dataset;
+import ro.ubbcluj.cs.io.MiniBatch;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Training: a single mini-batch update and a whole epoch over synthetic 784-dim samples
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainingBenchmark {
+
+    private static final int EPOCH = 10000;
+
+    @Param({"EXAMPLE", "BATCH"})
+    public NeuralNetworkBuilder.TrainingMode mode;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"10", "64"})
+    public int batchSize;
+
+    private ForkJoinPool pool;
+    private NeuralNetwork neuralNetwork;
+    private Dataset dataset;
+    private MiniBatch batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = SyntheticData.dataset(EPOCH);
+        batch = new MiniBatch(batchSize, SyntheticData.INPUTS, SyntheticData.CLASSES);
+        dataset.fill(batch, 0, batchSize);
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Fresh weights every iteration, so the learning does not saturate the activations; the workers are shared
+     */
+    @Setup(Level.Iteration)
+    public void resetNetwork() {
+        neuralNetwork = new NeuralNetworkBuilder()
+                .havingSizes(SyntheticData.INPUTS, 50, SyntheticData.CLASSES)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .withTrainingMode(mode)
+                .withThreads(threads)
+                .withPool(pool)
+                .withSeed(SyntheticData.SEED)
+                .build();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sgd() {
+        neuralNetwork.sgd(batch);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public void epoch() {
+        for (int j = 0; j < dataset.size(); j += batchSize) {
+            dataset.fill(batch, j, Math.min(dataset.size(), j + batchSize));
+            neuralNetwork.sgd(batch);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ro.ubbcluj.cs.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder;
+import ro.ubbcluj.cs.ann.validation.Statistics;
+import ro.ubbcluj.cs.ann.validation.Validator;
+import ro.ubbcluj.cs.io.Dataset;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of a 10k-sample dataset, as done after every epoch
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private NeuralNetwork neuralNetwork;
+    private Dataset dataset;
+
+    @Setup
+    public void setUp() {
+        neuralNetwork = new NeuralNetworkBuilder()
+                .havingSizes(SyntheticData.INPUTS, 50, SyntheticData.CLASSES)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .withThreads(threads)
+                .withSeed(SyntheticData.SEED)
+                .build();
+        dataset = SyntheticData.dataset(10000);
+    }
+
+    @TearDown
+    public void tearDown() {
+        neuralNetwork.close();
+    }
+
+    @Benchmark
+    public Statistics getStatistics() {
+        return Validator.getStatistics(neuralNetwork, dataset);
+    }
+}
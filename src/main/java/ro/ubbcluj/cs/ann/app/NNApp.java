@@ -3,19 +3,35 @@ package ro.ubbcluj.cs.ann.app;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.ubbcluj.cs.ann.impl.FloatNeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.HogwildTrainer;
+import ro.ubbcluj.cs.ann.impl.MathUtils;
+import ro.ubbcluj.cs.ann.impl.ModelCheckpoint;
 import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
 import ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder;
+import ro.ubbcluj.cs.ann.impl.QuantizedNeuralNetwork;
 import ro.ubbcluj.cs.ann.validation.Statistics;
 import ro.ubbcluj.cs.ann.validation.Validator;
+import ro.ubbcluj.cs.io.CheckpointWriter;
+import ro.ubbcluj.cs.io.Dataset;
 import ro.ubbcluj.cs.io.DigitImageLoadingService;
+import ro.ubbcluj.cs.io.MiniBatch;
+import ro.ubbcluj.cs.io.StreamingBatchSource;
 import ro.ubbcluj.cs.io.TrainingExample;
 
-import java.util.Collections;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
 
 import static ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder.Activation;
 import static ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder.Activation.SIGMOID;
+import static ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder.CostFunction;
 import static ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder.CostFunction.MEAN_SQUARED;
+import static ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder.Optimizer;
 import static ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder.WeightsInitialization.XAVIER;
 
 /**
@@ -32,6 +48,8 @@ public class NNApp {
     private static final String TRAIN_FEATURES = "/train/trn60k-images-ubyte";
     private static final String TESTING_LABELS = "/test/tst10k-labels-ubyte";
     private static final String TESTING_FEATURES = "/test/tst10k-images-ubyte";
+    private static final Path CHECKPOINTS = Paths.get("checkpoints");
+    private static final int RETAINED_CHECKPOINTS = 3;
 
     /**
      * Learning parameters
@@ -40,49 +58,130 @@ public class NNApp {
     private static final int BATCH_SIZE = 10;
     private static final double TRAINING_PERCENT = 5.0 / 6.0;
     private static final double ETA = 0.3;
+    /**
+     * Update rule, MOMENTUM and NESTEROV use MOMENTUM as coefficient
+     */
+    private static final Optimizer OPTIMIZER = Optimizer.SGD;
+    private static final double MOMENTUM = 0.9;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final long SEED = 1234;
+    /**
+     * Train with lock-free Hogwild! workers instead of synchronous mini-batches (not reproducible)
+     */
+    private static final boolean ASYNCHRONOUS = false;
+    /**
+     * Stream the training file in background-decoded mini-batches instead of iterating the loaded samples
+     * (the file order is kept, validation is the tail of the file)
+     */
+    private static final boolean STREAMING = false;
+    private static final int PREFETCH = 8;
+    /**
+     * Also train the single precision variant on the same batches and report it next to the double one
+     * (trains a second network for all the iterations, SGD only)
+     */
+    private static final boolean COMPARE_SINGLE_PRECISION = false;
+    /**
+     * Also quantize the best network to int8 and report its accuracy next to the double one
+     */
+    private static final boolean QUANTIZE = false;
+    private static final int CALIBRATION_SAMPLES = 1000;
 
 
     private static final Activation ACTIVATION_FUNCTION = SIGMOID;
     private static final Activation ACTIVATION_FUNCTION_OUTPUT = SIGMOID;
+    /**
+     * SOFT_MAX outputs need CROSS_ENTROPY or LOG_LIKELIHOOD, whose output delta is simply output - target
+     */
+    private static final CostFunction COST_FUNCTION = MEAN_SQUARED;
 
     public static void main(final String[] args) throws Exception {
         log.debug("Loading training data");
-        final List<TrainingExample> trainData = new DigitImageLoadingService(TRAINING_LABELS, TRAIN_FEATURES, ACTIVATION_FUNCTION.maxValue).loadDigitImages();
-        Collections.shuffle(trainData);
-        final List<TrainingExample> training = trainData.subList(0, (int) (TRAINING_PERCENT * trainData.size()));
-        final List<TrainingExample> validation = trainData.subList((int) (TRAINING_PERCENT * trainData.size()), trainData.size());
+        final Random random = new Random(SEED);
+        final DigitImageLoadingService trainingService = new DigitImageLoadingService(TRAINING_LABELS, TRAIN_FEATURES, ACTIVATION_FUNCTION.maxValue);
+        final Dataset training;
+        final Dataset validation;
+        final Epoch epoch;
+        if (STREAMING) {
+            //only the validation tail is loaded, the training head is streamed from the file on every epoch
+            if (ASYNCHRONOUS) {
+                throw new IllegalStateException("Asynchronous training needs the training set in memory");
+            }
+            training = null;
+            validation = trainingService.loadTail(TRAINING_PERCENT);
+            epoch = consumer -> {
+                try (StreamingBatchSource source = trainingService.streamBatches(BATCH_SIZE, PREFETCH)) {
+                    int remaining = (int) (TRAINING_PERCENT * source.size());
+                    MiniBatch streamed;
+                    while (remaining > 0 && (streamed = source.next()) != null) {
+                        streamed.setSize(Math.min(streamed.size(), remaining));
+                        consumer.accept(streamed);
+                        remaining -= streamed.size();
+                        source.release(streamed);
+                    }
+                }
+            };
+        } else {
+            final Dataset trainData = trainingService.loadDataset();
+            trainData.shuffle(random);
+            training = trainData.subset(0, (int) (TRAINING_PERCENT * trainData.size()));
+            validation = trainData.subset((int) (TRAINING_PERCENT * trainData.size()), trainData.size());
+            final MiniBatch batch = new MiniBatch(BATCH_SIZE, training.getFeatureCount(), training.getClasses());
+            epoch = consumer -> {
+                for (int j = 0; j < training.size(); j += BATCH_SIZE) {
+                    training.fill(batch, j, Math.min(training.size(), j + BATCH_SIZE));
+                    consumer.accept(batch);
+                }
+            };
+        }
 
         log.debug("Loading test data");
-        final List<TrainingExample> testData = new DigitImageLoadingService(TESTING_LABELS, TESTING_FEATURES, ACTIVATION_FUNCTION.maxValue).loadDigitImages();
+        final Dataset testData = new DigitImageLoadingService(TESTING_LABELS, TESTING_FEATURES, ACTIVATION_FUNCTION.maxValue).loadDataset();
 
-        log.info(String.format("IMAGE DATA LOADED: %d training, %d validation, %d test", training.size(), validation.size(), testData.size()));
+        if (training != null) {
+            log.info(String.format("IMAGE DATA LOADED: %d training, %d validation, %d test", training.size(), validation.size(), testData.size()));
+        } else {
+            log.info(String.format("IMAGE DATA LOADED: streamed training, %d validation, %d test", validation.size(), testData.size()));
+        }
 
-        final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+        final NeuralNetworkBuilder builder = new NeuralNetworkBuilder()
                 .havingSizes(784, 50, 10)
                 .havingLearningRate(ETA)
                 .withOutputFunction(ACTIVATION_FUNCTION_OUTPUT)
                 .withWeightsInitialization(XAVIER)
-                .withCostFunction(MEAN_SQUARED)
-                .build();
-
-        log.info("Start training");
+                .withCostFunction(COST_FUNCTION)
+                .withOptimizer(OPTIMIZER)
+                .withMomentum(MOMENTUM)
+                .withThreads(THREADS)
+                .withSeed(SEED);
+        final NeuralNetwork neuralNetwork = builder.build();
+
+        final HogwildTrainer hogwildTrainer = ASYNCHRONOUS ? new HogwildTrainer(neuralNetwork, THREADS, BATCH_SIZE) : null;
+
+        log.info("Start training, math kernels: " + MathUtils.kernels());
+        final CheckpointWriter<NeuralNetwork> checkpoints =
+                new CheckpointWriter<>(CHECKPOINTS, "nn", ".bin", RETAINED_CHECKPOINTS, ModelCheckpoint::save);
         int best = 0;
         NeuralNetwork bestNN = null;
         for (int i = 1; i <= ITERATIONS; ++i) {
-            for (int j = 0; j < training.size(); j += BATCH_SIZE) {
-                final List<TrainingExample> batch = training.subList(j, Math.min(training.size(), j + BATCH_SIZE));
-                neuralNetwork.sgd(batch);
+            if (hogwildTrainer != null) {
+                hogwildTrainer.train(training);
+            } else {
+                epoch.forEachBatch(neuralNetwork::sgd);
             }
             final Statistics statistics = Validator.getStatistics(neuralNetwork, validation);
             final int result = statistics.getCorrectAnswers();
             if (result > best) {
                 bestNN = new NeuralNetwork(neuralNetwork);
                 best = result;
+                checkpoints.submit(bestNN);//bestNN is never trained, it is written in the background
             }
             log.info(String.format("Iteration %d (Accuracy) : %.4f ", i, statistics.getAccuracy()));
             log.info(String.format("Iteration %d (F-measure): %.4f", i, statistics.getFMeasure()));
         }
 
+        checkpoints.close();
+        log.info("Best model saved to " + checkpoints.latest());
+
         final Statistics statisticsValidation = Validator.getStatistics(bestNN, validation);
         final int resultValidation = statisticsValidation.getCorrectAnswers();
 
@@ -95,6 +194,59 @@ public class NNApp {
 
 
         log.info(statisticsTest.toString());
+
+        if (QUANTIZE) {
+            final Dataset calibrationSource = training != null ? training : validation;
+            final List<TrainingExample> calibration = new ArrayList<>(CALIBRATION_SAMPLES);
+            for (int i = 0; i < Math.min(CALIBRATION_SAMPLES, calibrationSource.size()); ++i) {
+                calibration.add(calibrationSource.getTrainingExample(i));
+            }
+            final QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(bestNN, calibration);
+            final Statistics statisticsQuantized = Validator.getStatistics(quantized, testData);
+            log.info(String.format("Test accuracy: %.4f (double), %.4f (int8), delta %+.4f; parameters: %d bytes (double), %d bytes (int8)",
+                    statisticsTest.getAccuracy(), statisticsQuantized.getAccuracy(),
+                    statisticsQuantized.getAccuracy() - statisticsTest.getAccuracy(),
+                    quantized.getSourceParameterBytes(), quantized.getParameterBytes()));
+        }
+
+        if (COMPARE_SINGLE_PRECISION && OPTIMIZER != Optimizer.SGD) {
+            log.warn("Single precision comparison skipped, it only supports the SGD optimizer, not " + OPTIMIZER);
+        } else if (COMPARE_SINGLE_PRECISION) {
+            final Statistics statisticsFloat = Validator.getStatistics(trainSinglePrecision(builder, epoch, validation), testData);
+            log.info(String.format("Test accuracy: %.4f (double), %.4f (float)", statisticsTest.getAccuracy(), statisticsFloat.getAccuracy()));
+        }
+
+        neuralNetwork.close();
+    }
+
+    /**
+     * One pass over the training mini-batches, each batch is only valid during the call
+     */
+    private interface Epoch {
+        void forEachBatch(Consumer<MiniBatch> consumer) throws IOException;
+    }
+
+    /**
+     * Trains the single precision network on the same mini-batches as the double one
+     *
+     * @return the network performing best on the validation set
+     */
+    private static FloatNeuralNetwork trainSinglePrecision(final NeuralNetworkBuilder builder, final Epoch epoch,
+                                                           final Dataset validation) throws IOException {
+        final FloatNeuralNetwork neuralNetwork = builder.buildSinglePrecision();
+        log.info("Start training (float)");
+        int best = 0;
+        FloatNeuralNetwork bestNN = neuralNetwork;
+        for (int i = 1; i <= ITERATIONS; ++i) {
+            epoch.forEachBatch(neuralNetwork::sgd);
+            final Statistics statistics = Validator.getStatistics(neuralNetwork, validation);
+            if (statistics.getCorrectAnswers() > best) {
+                bestNN = new FloatNeuralNetwork(neuralNetwork);
+                best = statistics.getCorrectAnswers();
+            }
+            log.info(String.format("Iteration %d (Accuracy, float) : %.4f ", i, statistics.getAccuracy()));
+        }
+        return bestNN;
     }
 
 
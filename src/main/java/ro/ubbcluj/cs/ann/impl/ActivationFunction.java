@@ -17,18 +17,55 @@ interface ActivationFunction {
 
     default double[] function(final double[] x) {
         final double[] result = new double[x.length];
-        for (int i = 0; i < result.length; ++i) {
-            result[i] = function(x[i]);
-        }
+        function(x, result);
         return result;
     }
 
     default double[] derivative(final double[] x) {
         final double[] result = new double[x.length];
-        for (int i = 0; i < result.length; ++i) {
+        derivative(x, result);
+        return result;
+    }
+
+    /**
+     * In-place variant, result may be the same array as x
+     */
+    default void function(final double[] x, final double[] result) {
+        function(x, result, result.length);
+    }
+
+    /**
+     * In-place variant, result may be the same array as x
+     */
+    default void derivative(final double[] x, final double[] result) {
+        derivative(x, result, result.length);
+    }
+
+    /**
+     * In-place variant over the first length values
+     */
+    default void function(final double[] x, final double[] result, final int length) {
+        for (int i = 0; i < length; ++i) {
+            result[i] = function(x[i]);
+        }
+    }
+
+    /**
+     * In-place variant over count packed rows of width values, e.g. the outputs of a mini-batch
+     * <p>
+     * Element-wise functions ignore the rows, SoftMax normalizes each row on its own.
+     */
+    default void function(final double[] x, final double[] result, final int count, final int width) {
+        function(x, result, count * width);
+    }
+
+    /**
+     * In-place variant over the first length values
+     */
+    default void derivative(final double[] x, final double[] result, final int length) {
+        for (int i = 0; i < length; ++i) {
             result[i] = derivative(x[i]);
         }
-        return result;
     }
 
     /**
@@ -98,6 +135,11 @@ interface ActivationFunction {
             return sigmoid * (1 - sigmoid);
         }
 
+        @Override
+        public void function(final double[] x, final double[] result, final int length) {
+            MathUtils.sigmoid(x, result, length);
+        }
+
         @Override
         public double minValue() {
             return 0;
@@ -163,17 +205,70 @@ interface ActivationFunction {
 
 
     /**
-     *
+     * F:R^n->(0,1)^n, exp(x_i) / sum_j exp(x_j)
+     * <p>
+     * It is defined on a whole layer, so only the array variants are available. The maximum is subtracted
+     * before exponentiating, which keeps exp from overflowing. Its Jacobian is not diagonal: it is only
+     * trained through the output delta fused with the CROSS_ENTROPY or LOG_LIKELIHOOD cost, output - target.
      */
-    class SoftMax implements ActivationFunction {//todo implementation needed
+    class SoftMax implements ActivationFunction {
         @Override
         public double function(double x) {
-            return 0;
+            throw new UnsupportedOperationException("SoftMax is defined on a whole layer");
         }
 
         @Override
         public double derivative(double x) {
-            return 0;
+            throw new UnsupportedOperationException("SoftMax is only trained with a fused cross-entropy delta");
+        }
+
+        @Override
+        public void function(final double[] x, final double[] result, final int length) {
+            softMax(x, result, 0, length);
+        }
+
+        @Override
+        public void function(final double[] x, final double[] result, final int count, final int width) {
+            for (int b = 0; b < count; ++b) {
+                softMax(x, result, b * width, width);
+            }
+        }
+
+        private static void softMax(final double[] x, final double[] result, final int from, final int length) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < from + length; ++i) {
+                max = Math.max(max, x[i]);
+            }
+            double sum = 0;
+            for (int i = from; i < from + length; ++i) {
+                final double e = Math.exp(x[i] - max);
+                result[i] = e;
+                sum += e;
+            }
+            final double inverse = 1 / sum;
+            for (int i = from; i < from + length; ++i) {
+                result[i] *= inverse;
+            }
+        }
+
+        /**
+         * Single precision variant, used by FloatNeuralNetwork
+         */
+        static void softMax(final float[] x, final float[] result, final int length) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < length; ++i) {
+                max = Math.max(max, x[i]);
+            }
+            float sum = 0;
+            for (int i = 0; i < length; ++i) {
+                final float e = (float) Math.exp(x[i] - max);
+                result[i] = e;
+                sum += e;
+            }
+            final float inverse = 1 / sum;
+            for (int i = 0; i < length; ++i) {
+                result[i] *= inverse;
+            }
         }
 
         @Override
@@ -183,7 +278,7 @@ interface ActivationFunction {
 
         @Override
         public double maxValue() {
-            return 0;
+            return 1;
         }
     }
 }
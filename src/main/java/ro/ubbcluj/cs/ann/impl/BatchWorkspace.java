@@ -0,0 +1,82 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Preallocated matrices for mini-batch forward/backward passes of a NeuralNetwork
+ * <p>
+ * Every matrix is row-major with one row per sample of the batch.
+ * The buffers only grow, so batches of a fixed size do not allocate in steady state.
+ * It must only be used by one thread at a time.
+ */
+final class BatchWorkspace {
+
+    private final Parameters parameters;
+
+    /**
+     * Number of samples the buffers can hold
+     */
+    private int capacity;
+
+    /**
+     * activations[0] is the packed input, activations[layer + 1] is the output of layer, batch x rows(layer)
+     */
+    double[][] activations;
+
+    /**
+     * zs[layer] is the weighted input of layer, batch x rows(layer)
+     */
+    double[][] zs;
+
+    /**
+     * deltas[layer] is the error of layer with respect to its weighted input, batch x rows(layer)
+     */
+    double[][] deltas;
+
+    /**
+     * Packed targets, batch x outputs
+     */
+    double[] targets;
+
+    /**
+     * Positions of the non-zero inputs of sample b, from b * columns(0), and whether the first layer uses them
+     */
+    int[] nonZeros;
+    int[] nonZeroCounts;
+    boolean sparse;
+
+    BatchWorkspace(final Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Makes sure the buffers can hold the given number of samples
+     *
+     * @param batchSize requested number of samples
+     */
+    void ensureCapacity(final int batchSize) {
+        if (batchSize <= capacity) {
+            return;
+        }
+        final int layers = parameters.layers();
+        activations = new double[layers + 1][];
+        zs = new double[layers][];
+        deltas = new double[layers][];
+        activations[0] = new double[batchSize * parameters.columns(0)];
+        for (int layer = 0; layer < layers; ++layer) {
+            final int rows = parameters.rows(layer);
+            activations[layer + 1] = new double[batchSize * rows];
+            zs[layer] = new double[batchSize * rows];
+            deltas[layer] = new double[batchSize * rows];
+        }
+        targets = new double[batchSize * parameters.rows(layers - 1)];
+        nonZeros = new int[batchSize * parameters.columns(0)];
+        nonZeroCounts = new int[batchSize];
+        capacity = batchSize;
+    }
+
+    /**
+     * @return the output matrix of the last forward pass
+     */
+    double[] output() {
+        return activations[activations.length - 1];
+    }
+}
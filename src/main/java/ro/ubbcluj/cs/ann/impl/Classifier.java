@@ -0,0 +1,51 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Inference side of a trained model, whatever the precision of its parameters
+ */
+public interface Classifier {
+
+    /**
+     * Computes the model's outputs for the given input
+     *
+     * @param inputs testing sample
+     * @return values outputted by the model
+     */
+    double[] feedForward(double[] inputs);
+
+    /**
+     * Given an input set returns the associated class
+     *
+     * @param inputs testing sample
+     * @return index of highest output value c, 0 <= c < number_outputs
+     */
+    int classify(double[] inputs);
+
+    /**
+     * Computes the model's outputs for many samples at once
+     *
+     * @param inputs testing samples
+     * @return values outputted by the model, one row per sample
+     */
+    default double[][] predictBatch(final double[][] inputs) {
+        final double[][] outputs = new double[inputs.length][];
+        for (int i = 0; i < inputs.length; ++i) {
+            outputs[i] = feedForward(inputs[i]);
+        }
+        return outputs;
+    }
+
+    /**
+     * Given many input sets returns their associated classes
+     *
+     * @param inputs testing samples
+     * @return for every sample the index of its highest output value
+     */
+    default int[] classifyBatch(final double[][] inputs) {
+        final int[] classes = new int[inputs.length];
+        for (int i = 0; i < inputs.length; ++i) {
+            classes[i] = classify(inputs[i]);
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,281 @@
+package ro.ubbcluj.cs.ann.impl;
+
+
+import ro.ubbcluj.cs.io.MiniBatch;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Single precision variant of NeuralNetwork
+ * <p>
+ * Weights, biases, activations, deltas and gradients are stored as float, in the same flat layout
+ * as Parameters, so twice as many values fit in a cache line. Samples stay double at the API and are
+ * converted once per forward pass; sums are accumulated in float as well.
+ * <p>
+ * Training runs per example on the calling thread, with plain SGD updates.
+ */
+public class FloatNeuralNetwork implements Classifier {
+
+    /**
+     * Activation function
+     */
+    private final ActivationFunction activationFunction;
+
+    /**
+     * Activation function for the last layer
+     */
+    private final ActivationFunction outputFunction;
+
+    /**
+     * Cost function, decides the output delta as in NeuralNetwork
+     */
+    private final NeuralNetworkBuilder.CostFunction costFunction;
+
+    /**
+     * Neuron layers sizes
+     */
+    private final int[] sizes;
+
+    /**
+     * Start of each layer's weight and bias block, see Parameters
+     */
+    private final int[] weightOffsets;
+    private final int[] biasOffsets;
+
+    /**
+     * weights and biases, stored contiguously
+     */
+    private final float[] values;
+
+    /**
+     * Gradient of the current mini-batch
+     */
+    private final float[] deviations;
+
+    /**
+     * ANN's learning rate
+     */
+    private final float learningRate;
+
+    /**
+     * L2 weight decay coefficient
+     */
+    private final float l2;
+
+    /**
+     * Per-thread buffers for forward and backward passes
+     */
+    private final ThreadLocal<FloatWorkspace> workspaces;
+
+    /**
+     * Creates a single precision copy of the given ANN, every parameter is rounded to the nearest float
+     *
+     * @param neuralNetwork given ANN to convert
+     */
+    public FloatNeuralNetwork(final NeuralNetwork neuralNetwork) {
+        final Parameters parameters = neuralNetwork.parameters();
+        this.activationFunction = neuralNetwork.activationFunction();
+        this.outputFunction = neuralNetwork.outputFunction();
+        this.costFunction = neuralNetwork.costFunction();
+        this.sizes = parameters.sizes();
+        this.learningRate = (float) neuralNetwork.learningRate();
+        this.l2 = (float) neuralNetwork.l2();
+        this.weightOffsets = new int[parameters.layers()];
+        this.biasOffsets = new int[parameters.layers()];
+        for (int layer = 0; layer < parameters.layers(); ++layer) {
+            weightOffsets[layer] = parameters.weightOffset(layer);
+            biasOffsets[layer] = parameters.biasOffset(layer);
+        }
+        this.values = new float[parameters.size()];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (float) parameters.values[i];
+        }
+        this.deviations = new float[values.length];
+        this.workspaces = ThreadLocal.withInitial(() -> new FloatWorkspace(this.sizes));
+    }
+
+    /**
+     * Creates a new ANN by copying the state of the given ANN
+     *
+     * @param neuralNetwork given ANN to copy
+     */
+    public FloatNeuralNetwork(final FloatNeuralNetwork neuralNetwork) {
+        this.activationFunction = neuralNetwork.activationFunction;
+        this.outputFunction = neuralNetwork.outputFunction;
+        this.costFunction = neuralNetwork.costFunction;
+        this.sizes = neuralNetwork.sizes;
+        this.learningRate = neuralNetwork.learningRate;
+        this.l2 = neuralNetwork.l2;
+        this.weightOffsets = neuralNetwork.weightOffsets;
+        this.biasOffsets = neuralNetwork.biasOffsets;
+        this.values = neuralNetwork.values.clone();
+        this.deviations = new float[values.length];
+        this.workspaces = ThreadLocal.withInitial(() -> new FloatWorkspace(this.sizes));
+    }
+
+    @Override
+    public double[] feedForward(final double[] inputs) {
+        validateInput(inputs);
+        final FloatWorkspace workspace = workspaces.get();
+        workspace.setInput(inputs);
+        final float[] outputs = feedForward(workspace);
+        final double[] result = new double[outputs.length];
+        for (int i = 0; i < outputs.length; ++i) {
+            result[i] = outputs[i];
+        }
+        return result;
+    }
+
+    @Override
+    public int classify(final double[] inputs) {
+        validateInput(inputs);
+        final FloatWorkspace workspace = workspaces.get();
+        workspace.setInput(inputs);
+        return MathUtils.getResult(feedForward(workspace));
+    }
+
+    /**
+     * Performs Stochastic Gradient Descent Algorithm
+     * on the given batch of samples
+     *
+     * @param batch given training samples
+     */
+    public void sgd(final List<TrainingExample> batch) {
+        final FloatWorkspace workspace = workspaces.get();
+        Arrays.fill(deviations, 0);
+        for (TrainingExample trainingExample : batch) {
+            backPropagation(trainingExample.getFeatures(), trainingExample.getTargetValue(), workspace);
+        }
+        applyGradient();
+    }
+
+    /**
+     * Performs Stochastic Gradient Descent Algorithm
+     * on the given decoded mini-batch
+     *
+     * @param batch given training samples
+     */
+    public void sgd(final MiniBatch batch) {
+        final FloatWorkspace workspace = workspaces.get();
+        Arrays.fill(deviations, 0);
+        for (int i = 0; i < batch.size(); ++i) {
+            backPropagation(batch.getFeatures()[i], batch.getTargets()[i], workspace);
+        }
+        applyGradient();
+    }
+
+    /**
+     * Plain SGD update of the weights, decayed in the same loop, and of the biases
+     */
+    private void applyGradient() {
+        final float eta = learningRate;
+        for (int layer = 0; layer < weightOffsets.length; ++layer) {
+            final int from = weightOffsets[layer];
+            final int to = from + sizes[layer + 1] * sizes[layer];
+            if (l2 == 0) {
+                MathUtils.axpy(-eta, deviations, from, values, from, to - from);
+            } else {
+                for (int i = from; i < to; ++i) {
+                    values[i] -= eta * (deviations[i] + l2 * values[i]);
+                }
+            }
+            MathUtils.axpy(-eta, deviations, biasOffsets[layer], values, biasOffsets[layer], sizes[layer + 1]);
+        }
+    }
+
+    /**
+     * Adds the gradient of the cost on one sample to the mini-batch gradient
+     */
+    private void backPropagation(final double[] inputs, final double[] target, final FloatWorkspace workspace) {
+        validateInput(inputs);
+        workspace.setInput(inputs);
+        final float[] result = feedForward(workspace);
+
+        final int lastLayer = weightOffsets.length - 1;
+        final float[] outputZs = workspace.zs[lastLayer];
+        float[] delta = workspace.deltas[lastLayer];
+        if (costFunction == NeuralNetworkBuilder.CostFunction.MEAN_SQUARED) {
+            for (int j = 0; j < delta.length; ++j) {//deviation on output layer: derivative * (out - target)
+                delta[j] = (float) ((result[j] - target[j]) * outputFunction.derivative(outputZs[j]));
+            }
+        } else {
+            for (int j = 0; j < delta.length; ++j) {//derivatives of softmax / sigmoid and cross-entropy cancel out
+                delta[j] = (float) (result[j] - target[j]);
+            }
+        }
+
+        for (int layer = lastLayer; layer >= 0; --layer) {
+            final int rows = sizes[layer + 1];
+            final int columns = sizes[layer];
+            final float[] input = workspace.activations[layer];
+
+            MathUtils.axpy(1f, delta, 0, deviations, biasOffsets[layer], rows);
+
+            final int weightOffset = weightOffsets[layer];
+            for (int j = 0; j < rows; ++j) {
+                MathUtils.axpy(delta[j], input, 0, deviations, weightOffset + j * columns, columns);
+            }
+
+            if (layer > 0) {//propagate to the hidden layer feeding this one
+                final float[] zs = workspace.zs[layer - 1];
+                final float[] newDelta = workspace.deltas[layer - 1];
+                Arrays.fill(newDelta, 0);
+                for (int j = 0; j < rows; ++j) {
+                    MathUtils.axpy(delta[j], values, weightOffset + j * columns, newDelta, 0, columns);
+                }
+                for (int h = 0; h < columns; ++h) {
+                    newDelta[h] *= (float) activationFunction.derivative(zs[h]);
+                }
+                delta = newDelta;
+            }
+        }
+    }
+
+    /**
+     * Forward pass of the input held by the workspace
+     *
+     * @return the workspace's output buffer
+     */
+    private float[] feedForward(final FloatWorkspace workspace) {
+        final int layers = weightOffsets.length;
+        for (int i = 0; i < layers; ++i) {
+            final int numberOfNeurons = sizes[i + 1];
+            final int columns = sizes[i];
+            final int weightOffset = weightOffsets[i];
+            final int biasOffset = biasOffsets[i];
+            final float[] input = workspace.activations[i];
+            final float[] next = workspace.zs[i];
+            final float[] activations = workspace.activations[i + 1];
+            final ActivationFunction function = i == layers - 1 ? outputFunction : activationFunction;
+            for (int j = 0; j < numberOfNeurons; ++j) {
+                next[j] = values[biasOffset + j] + MathUtils.dot(values, weightOffset + j * columns, input, 0, columns);
+            }
+            if (function instanceof ActivationFunction.SoftMax) {
+                ActivationFunction.SoftMax.softMax(next, activations, numberOfNeurons);
+            } else {
+                for (int j = 0; j < numberOfNeurons; ++j) {
+                    activations[j] = (float) function.function(next[j]);
+                }
+            }
+        }
+        return workspace.output();
+    }
+
+    private void validateInput(final double[] input) {
+        if (input.length != this.sizes[0]) {
+            throw new IllegalArgumentException("Invalid number of inputs, expected " + this.sizes[0]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FloatNeuralNetwork{" +
+                "activationFunction=" + activationFunction +
+                ", size=" + values.length +
+                ", sizes=" + Arrays.toString(sizes) +
+                '}';
+    }
+}
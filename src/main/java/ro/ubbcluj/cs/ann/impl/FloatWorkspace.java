@@ -0,0 +1,56 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Single precision counterpart of Workspace, used by FloatNeuralNetwork
+ * <p>
+ * The input is converted once into activations[0], every other buffer is sized from the layer sizes.
+ * It must only be used by one thread at a time.
+ */
+final class FloatWorkspace {
+
+    /**
+     * activations[0] is the current input, activations[layer + 1] is the output of layer
+     */
+    final float[][] activations;
+
+    /**
+     * zs[layer] is the weighted input (pre-activation) of layer
+     */
+    final float[][] zs;
+
+    /**
+     * deltas[layer] is the error of layer with respect to its weighted input
+     */
+    final float[][] deltas;
+
+    FloatWorkspace(final int[] sizes) {
+        final int layers = sizes.length - 1;
+        this.activations = new float[layers + 1][];
+        this.zs = new float[layers][];
+        this.deltas = new float[layers][];
+        activations[0] = new float[sizes[0]];
+        for (int layer = 0; layer < layers; ++layer) {
+            final int rows = sizes[layer + 1];
+            activations[layer + 1] = new float[rows];
+            zs[layer] = new float[rows];
+            deltas[layer] = new float[rows];
+        }
+    }
+
+    /**
+     * Converts the given sample into the input buffer
+     */
+    void setInput(final double[] inputs) {
+        final float[] input = activations[0];
+        for (int i = 0; i < input.length; ++i) {
+            input[i] = (float) inputs[i];
+        }
+    }
+
+    /**
+     * @return the output of the last forward pass
+     */
+    float[] output() {
+        return activations[activations.length - 1];
+    }
+}
@@ -0,0 +1,135 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import ro.ubbcluj.cs.io.Dataset;
+import ro.ubbcluj.cs.io.MiniBatch;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Lock-free asynchronous training (Hogwild!)
+ * <p>
+ * Every worker walks its own shard of the training list in small mini-batches,
+ * back-propagates them against the shared weights and writes its update straight back
+ * without any synchronization. Workers may read weights that another worker is updating;
+ * for sparse-ish gradients and small learning rates the lost updates do not hurt convergence.
+ * Only SGD and classical momentum are accepted: the state of the adaptive optimizers
+ * (Adam's step counter and moments, RMSProp's averages) would drift under the same races.
+ * <p>
+ * Unlike NeuralNetwork.sgd the result depends on the thread interleaving and is not reproducible.
+ */
+public class HogwildTrainer {
+
+    private final NeuralNetwork neuralNetwork;
+
+    private final int batchSize;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Gradient buffer of every worker
+     */
+    private final Parameters[] gradients;
+
+    /**
+     * Decoded samples of every worker
+     */
+    private final MiniBatch[] batches;
+
+    /**
+     * @param neuralNetwork network whose weights are shared by the workers
+     * @param threads       number of workers
+     * @param batchSize     number of samples back-propagated between two updates of a worker
+     * @throws IllegalArgumentException if the network uses another optimizer than SGD or MOMENTUM
+     */
+    public HogwildTrainer(final NeuralNetwork neuralNetwork, final int threads, final int batchSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        final NeuralNetworkBuilder.Optimizer optimizer = neuralNetwork.optimizer();
+        if (optimizer != NeuralNetworkBuilder.Optimizer.SGD && optimizer != NeuralNetworkBuilder.Optimizer.MOMENTUM) {
+            throw new IllegalArgumentException("Hogwild! training only supports the SGD and MOMENTUM optimizers, not " + optimizer);
+        }
+        this.neuralNetwork = neuralNetwork;
+        this.batchSize = batchSize;
+        this.pool = new ForkJoinPool(threads);
+        this.gradients = new Parameters[threads];
+        this.batches = new MiniBatch[threads];
+        final int[] sizes = neuralNetwork.parameters().sizes();
+        for (int i = 0; i < threads; ++i) {
+            gradients[i] = neuralNetwork.parameters().emptyCopy();
+            batches[i] = new MiniBatch(batchSize, sizes[0], sizes[sizes.length - 1]);
+        }
+    }
+
+    /**
+     * Runs one epoch over the training list, each worker taking a contiguous shard
+     *
+     * @param training given training samples, shuffled by the caller
+     */
+    public void train(final List<TrainingExample> training) {
+        train(training.size(), (batch, from, to) -> {
+            batch.setSize(to - from);
+            for (int i = from; i < to; ++i) {
+                final TrainingExample t = training.get(i);
+                System.arraycopy(t.getFeatures(), 0, batch.getFeatures()[i - from], 0, t.getFeatures().length);
+                System.arraycopy(t.getTargetValue(), 0, batch.getTargets()[i - from], 0, t.getTargetValue().length);
+            }
+        });
+    }
+
+    /**
+     * Runs one epoch over the dataset, each worker taking a contiguous shard
+     *
+     * @param training given training samples, shuffled by the caller
+     */
+    public void train(final Dataset training) {
+        train(training.size(), training::fill);
+    }
+
+    /**
+     * Decodes the samples [from, to) into a worker's batch
+     */
+    private interface BatchFiller {
+        void fill(MiniBatch batch, int from, int to);
+    }
+
+    private void train(final int size, final BatchFiller filler) {
+        final int threads = gradients.length;
+        final List<Callable<Void>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; ++i) {
+            final Parameters gradient = gradients[i];
+            final MiniBatch batch = batches[i];
+            final int from = (int) ((long) size * i / threads);
+            final int to = (int) ((long) size * (i + 1) / threads);
+            workers.add(() -> {
+                for (int j = from; j < to; j += batchSize) {
+                    filler.fill(batch, j, Math.min(to, j + batchSize));
+                    gradient.clear();
+                    neuralNetwork.computeGradient(batch.getFeatures(), batch.getTargets(), 0, batch.size(), gradient);
+                    neuralNetwork.applyGradient(gradient);
+                }
+                return null;
+            });
+        }
+
+        for (final Future<Void> future : pool.invokeAll(workers)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Training interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Training failed", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Inner loops the network spends its time in
+ * <p>
+ * The scalar implementation is always available. When running on JDK 16+ with
+ * --add-modules jdk.incubator.vector, and the build included src/main/java16, a SIMD implementation
+ * based on the Vector API is picked instead. The system property ann.kernels=scalar forces the scalar one.
+ * <p>
+ * The SIMD kernels reorder the sums (several lanes, fused multiply-add), so results differ in the last bits
+ * and the two training modes agree bit for bit only with the scalar kernels.
+ */
+interface Kernels {
+
+    String VECTOR_KERNELS = "ro.ubbcluj.cs.ann.impl.VectorKernels";
+
+    /**
+     * Dot product of a[aOffset..aOffset+length) and b[bOffset..bOffset+length)
+     */
+    double dot(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * y[yOffset..yOffset+length) += alpha * x[xOffset..xOffset+length)
+     */
+    void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length);
+
+    /**
+     * a[0..length) *= b[0..length)
+     */
+    void multiply(double[] a, double[] b, int length);
+
+    /**
+     * result[0..length) = 1 / (1 + exp(-x[0..length))), result may be the same array as x
+     */
+    void sigmoid(double[] x, double[] result, int length);
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length);
+
+    String name();
+
+    /**
+     * @return the SIMD kernels when allowed and supported by the running JVM, the scalar ones otherwise
+     */
+    static Kernels select() {
+        if ("scalar".equalsIgnoreCase(System.getProperty("ann.kernels"))) {
+            return new ScalarKernels();
+        }
+        final Kernels vector = vector();
+        return vector != null ? vector : new ScalarKernels();
+    }
+
+    /**
+     * @return the SIMD kernels or null if they are not compiled in or the incubator module is not resolved
+     */
+    static Kernels vector() {
+        try {
+            final Kernels kernels = (Kernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+            kernels.dot(new double[1], 0, new double[1], 0, 1);//fails here if the module is missing
+            return kernels;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary checkpoint of a NeuralNetwork
+ * <p>
+ * Layout, all values little-endian:
+ * <pre>
+ * int     magic "NNCP"
+ * int     format version
+ * int     number of layers n, followed by n int sizes
+ * byte    activation, output activation, cost function, training mode, optimizer (enum ordinals,
+ *         version 1 has no optimizer and loads as SGD)
+ * double  learning rate, momentum, l2
+ * long    number of parameters
+ * long    CRC32 of the parameter block
+ * padding up to a multiple of 8 bytes
+ * double  parameters, in the order of Parameters (weight block then bias block of every layer)
+ * </pre>
+ * The parameters are written with a FileChannel in large chunks and read back from a memory mapping
+ * with a single bulk copy, so a checkpoint of the MNIST network loads in a few milliseconds.
+ * The optimizer state (velocities, moment estimates) is not saved, a loaded network starts it afresh.
+ */
+public final class ModelCheckpoint {
+
+    private static final int MAGIC = 0x4E4E4350;//NNCP
+    private static final int VERSION = 2;
+
+    /**
+     * Number of doubles written per FileChannel.write
+     */
+    private static final int CHUNK = 1 << 16;
+
+    private ModelCheckpoint() {
+    }
+
+    /**
+     * Writes the network's configuration and parameters, replacing the file if it exists
+     *
+     * @param neuralNetwork network to save
+     * @param file          destination
+     * @throws IOException if writing fails
+     */
+    public static void save(final NeuralNetwork neuralNetwork, final Path file) throws IOException {
+        final Parameters parameters = neuralNetwork.parameters();
+        final double[] values = parameters.values;
+        final int[] sizes = parameters.sizes();
+
+        final ByteBuffer header = ByteBuffer.allocate(headerSize(VERSION, sizes.length)).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(sizes.length);
+        for (int size : sizes) {
+            header.putInt(size);
+        }
+        header.put((byte) NeuralNetworkBuilder.Activation.of(neuralNetwork.activationFunction()).ordinal())
+                .put((byte) NeuralNetworkBuilder.Activation.of(neuralNetwork.outputFunction()).ordinal())
+                .put((byte) neuralNetwork.costFunction().ordinal())
+                .put((byte) neuralNetwork.trainingMode().ordinal())
+                .put((byte) neuralNetwork.optimizer().ordinal())
+                .putDouble(neuralNetwork.learningRate())
+                .putDouble(neuralNetwork.momentum())
+                .putDouble(neuralNetwork.l2())
+                .putLong(values.length);
+        final int checksumPosition = header.position();
+        header.putLong(0);
+        header.clear();
+
+        final ByteBuffer chunk = ByteBuffer.allocate(Math.min(CHUNK, Math.max(1, values.length)) * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.position(header.capacity());
+            for (int from = 0; from < values.length; from += CHUNK) {
+                final int count = Math.min(CHUNK, values.length - from);
+                chunk.clear();
+                chunk.asDoubleBuffer().put(values, from, count);
+                chunk.limit(count * Double.BYTES);
+                crc.update(chunk.array(), 0, chunk.limit());
+                writeFully(channel, chunk);
+            }
+
+            header.putLong(checksumPosition, crc.getValue());
+            channel.position(0);
+            writeFully(channel, header);
+        }
+    }
+
+    /**
+     * Loads a network training on the calling thread
+     *
+     * @see #load(Path, int)
+     */
+    public static NeuralNetwork load(final Path file) throws IOException {
+        return load(file, 1);
+    }
+
+    /**
+     * Maps the checkpoint and copies its parameters into a new network
+     *
+     * @param file    checkpoint written by save
+     * @param threads number of workers of the new network, it is not part of the checkpoint; they stop on close
+     * @return network with the saved configuration and parameters
+     * @throws IOException if the file can not be read, is truncated, corrupted or of an unknown version
+     */
+    public static NeuralNetwork load(final Path file, final int threads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            final ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                if (buffer.getInt() != MAGIC) {
+                    throw new IOException("Not a network checkpoint: " + file);
+                }
+                final int version = buffer.getInt();
+                if (version != 1 && version != VERSION) {
+                    throw new IOException("Unsupported checkpoint version " + version);
+                }
+                final int layers = buffer.getInt();
+                if (layers < 2 || headerSize(version, layers) > fileSize) {
+                    throw new IOException("Bad number of layers " + layers);
+                }
+                final int[] sizes = new int[layers];
+                for (int i = 0; i < layers; ++i) {
+                    sizes[i] = buffer.getInt();
+                }
+                NeuralNetwork.validateSizes(sizes);
+                final NeuralNetworkBuilder.Activation activation = NeuralNetworkBuilder.Activation.values()[buffer.get()];
+                final NeuralNetworkBuilder.Activation output = NeuralNetworkBuilder.Activation.values()[buffer.get()];
+                final NeuralNetworkBuilder.CostFunction costFunction = NeuralNetworkBuilder.CostFunction.values()[buffer.get()];
+                final NeuralNetworkBuilder.TrainingMode trainingMode = NeuralNetworkBuilder.TrainingMode.values()[buffer.get()];
+                final NeuralNetworkBuilder.Optimizer optimizer = version == 1
+                        ? NeuralNetworkBuilder.Optimizer.SGD : NeuralNetworkBuilder.Optimizer.values()[buffer.get()];
+                final double learningRate = buffer.getDouble();
+                final double momentum = buffer.getDouble();
+                final double l2 = buffer.getDouble();
+                final long count = buffer.getLong();
+                final long checksum = buffer.getLong();
+
+                final long expected = parameterCount(sizes);
+                if (count != expected) {
+                    throw new IOException("Expected " + expected + " parameters, found " + count);
+                }
+                final int offset = headerSize(version, layers);
+                if (fileSize < offset + count * Double.BYTES) {
+                    throw new IOException("Checkpoint is truncated");
+                }
+                final Parameters parameters = new Parameters(sizes);
+
+                buffer.position(offset);
+                final ByteBuffer block = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+                block.limit(parameters.size() * Double.BYTES);
+                final CRC32 crc = new CRC32();
+                crc.update(block.duplicate());
+                if (crc.getValue() != checksum) {
+                    throw new IOException("Checkpoint is corrupted, checksum mismatch");
+                }
+                final DoubleBuffer doubles = block.asDoubleBuffer();
+                doubles.get(parameters.values);
+
+                return new NeuralNetwork(activation.function(), output.function(), costFunction,
+                        learningRate, momentum, l2, trainingMode, optimizer, NeuralNetwork.workers(threads), true, parameters);
+            } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException("Checkpoint is corrupted: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @return size of the header rounded up to a multiple of 8, so the parameters are aligned
+     */
+    private static int headerSize(final int version, final int layers) {
+        final int enums = version == 1 ? 4 : 5;
+        final long size = 3 * Integer.BYTES + (long) layers * Integer.BYTES + enums + 3 * Double.BYTES + 2 * Long.BYTES;
+        return (int) Math.min(Integer.MAX_VALUE, (size + 7) & ~7L);
+    }
+
+    private static long parameterCount(final int[] sizes) {
+        long count = 0;
+        for (int layer = 0; layer < sizes.length - 1; ++layer) {
+            count += ((long) sizes[layer] + 1) * sizes[layer + 1];
+        }
+        return count;
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -1,18 +1,42 @@
 package ro.ubbcluj.cs.ann.impl;
 
 
+import ro.ubbcluj.cs.io.MiniBatch;
 import ro.ubbcluj.cs.io.TrainingExample;
 
-import java.util.ArrayList;
+import java.io.Closeable;
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 
 /**
  * @author Mihai Teletin
  */
-public class NeuralNetwork implements Cloneable {
+public class NeuralNetwork implements Classifier, Cloneable, Closeable {
+
+    /**
+     * Number of samples whose gradients are summed together before the partial sums are reduced
+     * <p>
+     * It is fixed so that the order of the floating point sums does not depend on the number of workers
+     */
+    private static final int SHARD_SIZE = 16;
+
+    /**
+     * Number of samples evaluated together by one worker during batch inference
+     */
+    private static final int PREDICTION_CHUNK = 64;
+
+    /**
+     * The first layer only visits the non-zero inputs when at most this fraction of them is non-zero
+     * <p>
+     * About 80% of the MNIST pixels are zeros. With the scalar kernels skipping zeros does not change any sum,
+     * so both paths give exactly the same results; the SIMD kernels sum in another order and match them up to rounding.
+     */
+    private static final double SPARSE_DENSITY = 0.5;
 
     /**
      * Activation function
@@ -25,18 +49,13 @@ public class NeuralNetwork implements Cloneable {
     private final ActivationFunction outputFunction;
 
     /**
-     * biases of this NeuralNetwork
+     * weights and biases of this NeuralNetwork, stored contiguously
      * <p>
-     * biases[layer][neuron_target]
-     */
-    private final double[][] biases;
-
-    /**
-     * weights of this NeuralNetwork
+     * weight from neuron_source to neuron_target: values[weightIndex(layer, neuron_target, neuron_source)]
      * <p>
-     * weights[layer][neuron_target][neuron_source]
+     * bias of neuron_target: values[biasIndex(layer, neuron_target)]
      */
-    private final double[][][] weights;
+    private final Parameters parameters;
 
 
     /**
@@ -50,19 +69,67 @@ public class NeuralNetwork implements Cloneable {
     private final double learningRate;
 
     /**
-     * Momentum coefficient
+     * Momentum coefficient of the MOMENTUM and NESTEROV optimizers
      */
-    private final double momentum;//todo integrate
+    private final double momentum;
 
     /**
-     * Weigh decay coefficient
+     * L2 weight decay coefficient, applied to the weights (not the biases) by the optimizer
      */
-    private final double l2;//todo integrate
+    private final double l2;
 
     /**
      * Cost function
      */
-    private final NeuralNetworkBuilder.CostFunction costFunction;//todo integrate
+    private final NeuralNetworkBuilder.CostFunction costFunction;
+
+    /**
+     * Per-example or matrix-matrix back-propagation
+     */
+    private final NeuralNetworkBuilder.TrainingMode trainingMode;
+
+    /**
+     * Update rule and its state, allocated once
+     */
+    private final NeuralNetworkBuilder.Optimizer optimizer;
+    private final Updater updater;
+
+    /**
+     * Workers computing the partial gradients of a mini-batch, null when training on the calling thread
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Whether close shuts the pool down, false for a pool shared by the caller and for copies
+     */
+    private final boolean ownsPool;
+
+    /**
+     * Gradient of the current mini-batch
+     */
+    private Parameters batchGradient;
+
+    /**
+     * Buffers of the partial sums, reused across mini-batches: no more than the depth of the
+     * reduction tree per worker are in use at a time
+     */
+    private final ConcurrentLinkedDeque<Parameters> spareGradients = new ConcurrentLinkedDeque<>();
+
+    /**
+     * References to the samples of the current mini-batch
+     */
+    private double[][] batchInputs = new double[0][];
+    private double[][] batchTargets = new double[0][];
+
+    /**
+     * Per-thread buffers for forward and backward passes
+     */
+    private final ThreadLocal<Workspace> workspaces;
+
+    /**
+     * Per-thread buffers for mini-batch forward and backward passes
+     */
+    private final ThreadLocal<BatchWorkspace> batchWorkspaces;
 
 
     /**
@@ -74,6 +141,11 @@ public class NeuralNetwork implements Cloneable {
      * @param learningRate          global rate
      * @param momentum              coefficient for momentum
      * @param l2                    weight decay coefficient
+     * @param trainingMode          per-example or mini-batch matrix back-propagation
+     * @param optimizer             rule updating the parameters from the gradient
+     * @param pool                  workers sharing each mini-batch, null to train on the calling thread
+     * @param ownsPool              whether close shuts the pool down
+     * @param random                generator used for the initial weights
      * @param sizes                 array consisting of each nn layer's size
      *                              example new NeuralNetwork(new int[]{1, 2, 5, 3}) creates a NeuralNetwork consisting of:
      *                              - an input neuron
@@ -88,36 +160,34 @@ public class NeuralNetwork implements Cloneable {
                   final double learningRate,
                   final double momentum,
                   final double l2,
+                  final NeuralNetworkBuilder.TrainingMode trainingMode,
+                  final NeuralNetworkBuilder.Optimizer optimizer,
+                  final ForkJoinPool pool,
+                  final boolean ownsPool,
+                  final Random random,
                   final int... sizes) {
-        this.validateSizes(sizes);
-
-        this.sizes = sizes;
-        this.biases = new double[sizes.length - 1][];
-        this.weights = new double[sizes.length - 1][][];
+        this(activationFunction, outputFunction, costFunction, learningRate, momentum, l2, trainingMode, optimizer, pool, ownsPool,
+                new Parameters(validateSizes(sizes)));
 
-        this.learningRate = learningRate;
-        this.activationFunction = activationFunction;
-        this.outputFunction = outputFunction;
-        this.momentum = momentum;
-        this.l2 = l2;
-        this.costFunction = costFunction;
-
-        for (int i = 1; i < sizes.length; ++i) {
-            biases[i - 1] = MathUtils.randMatrix(1, sizes[i], 0, 1)[0];
+        final double[] values = parameters.values;
+        for (int layer = 0; layer < parameters.layers(); ++layer) {
+            final int biasOffset = parameters.biasOffset(layer);
+            MathUtils.randFill(random, values, biasOffset, biasOffset + parameters.rows(layer), 0, 1);
         }
 
-
-        for (int i = 1; i < sizes.length; ++i) {
+        for (int layer = 0; layer < parameters.layers(); ++layer) {
+            final int from = parameters.weightOffset(layer);
+            final int to = from + parameters.rows(layer) * parameters.columns(layer);
             switch (weightsInitialization) {
                 case XAVIER:
-                    final double xavierStdev = 1.0 / Math.sqrt(sizes[i - 1]);
-                    this.weights[i - 1] = MathUtils.randMatrix(sizes[i], sizes[i - 1], 0, xavierStdev);
+                    final double xavierStdev = 1.0 / Math.sqrt(parameters.columns(layer));
+                    MathUtils.randFill(random, values, from, to, 0, xavierStdev);
                     break;
                 case NORMAL:
-                    this.weights[i - 1] = MathUtils.randMatrix(sizes[i], sizes[i - 1], 0, 1);
+                    MathUtils.randFill(random, values, from, to, 0, 1);
                     break;
                 case UNIFORM:
-                    this.weights[i - 1] = MathUtils.randUniformMatrix(sizes[i], sizes[i - 1]);
+                    MathUtils.randUniformFill(random, values, from, to);
                     break;
             }
 
@@ -125,14 +195,56 @@ public class NeuralNetwork implements Cloneable {
     }
 
 
+    /**
+     * Constructs a neural network around existing parameters, e.g. read from a checkpoint
+     *
+     * @param pool       workers sharing each mini-batch, null to train on the calling thread
+     * @param ownsPool   whether close shuts the pool down
+     * @param parameters weights and biases, owned by the new network
+     */
+    NeuralNetwork(final ActivationFunction activationFunction,
+                  final ActivationFunction outputFunction,
+                  final NeuralNetworkBuilder.CostFunction costFunction,
+                  final double learningRate,
+                  final double momentum,
+                  final double l2,
+                  final NeuralNetworkBuilder.TrainingMode trainingMode,
+                  final NeuralNetworkBuilder.Optimizer optimizer,
+                  final ForkJoinPool pool,
+                  final boolean ownsPool,
+                  final Parameters parameters) {
+        validateFunctions(activationFunction, outputFunction, costFunction);
+        this.sizes = parameters.sizes();
+        this.parameters = parameters;
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(this.parameters));
+        this.batchWorkspaces = ThreadLocal.withInitial(() -> new BatchWorkspace(this.parameters));
+
+        this.learningRate = learningRate;
+        this.activationFunction = activationFunction;
+        this.outputFunction = outputFunction;
+        this.momentum = momentum;
+        this.l2 = l2;
+        this.costFunction = costFunction;
+        this.trainingMode = trainingMode;
+        this.optimizer = optimizer;
+        this.updater = optimizer.updater(momentum, parameters.size());
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+    }
+
+
     /**
      * Creates a new ANN by copying the state of the given ANN
+     * <p>
+     * The copy shares the workers of the given ANN without owning them,
+     * once that one is closed the copy runs on the calling thread.
      *
      * @param neuralNetwork given ANN to copy
      */
     public NeuralNetwork(NeuralNetwork neuralNetwork) {
-        this.weights = MathUtils.copyMatrix(neuralNetwork.weights);
-        this.biases = MathUtils.copyMatrix(neuralNetwork.biases);
+        this.parameters = new Parameters(neuralNetwork.parameters);
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(this.parameters));
+        this.batchWorkspaces = ThreadLocal.withInitial(() -> new BatchWorkspace(this.parameters));
         this.activationFunction = neuralNetwork.activationFunction;
         this.outputFunction = neuralNetwork.outputFunction;
         this.sizes = neuralNetwork.sizes;
@@ -140,6 +252,35 @@ public class NeuralNetwork implements Cloneable {
         this.l2 = neuralNetwork.l2;
         this.learningRate = neuralNetwork.learningRate;
         this.costFunction = neuralNetwork.costFunction;
+        this.trainingMode = neuralNetwork.trainingMode;
+        this.optimizer = neuralNetwork.optimizer;
+        this.updater = neuralNetwork.updater.copy();
+        this.pool = neuralNetwork.pool;
+        this.ownsPool = false;
+    }
+
+    /**
+     * @return workers for the given number of threads, null for a single thread
+     */
+    static ForkJoinPool workers(final int threads) {
+        return threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Stops the workers if this network created them, the network then trains and predicts on the calling thread
+     */
+    @Override
+    public void close() {
+        if (ownsPool && pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return whether the work can be handed to the workers
+     */
+    private boolean parallel() {
+        return pool != null && !pool.isShutdown();
     }
 
     /**
@@ -151,6 +292,8 @@ public class NeuralNetwork implements Cloneable {
      * - ETA = 0.3
      * - MOMENTUM = 0
      * - L2 = 0
+     * - plain SGD updates
+     * - per-example back-propagation on the calling thread
      *
      * @param sizes array consisting of each nn layer's size
      *              example new NeuralNetwork(new int[]{1, 2, 5, 3}) creates a NeuralNetwork consisting of:
@@ -167,6 +310,11 @@ public class NeuralNetwork implements Cloneable {
                 0.3,
                 0,
                 0,
+                NeuralNetworkBuilder.TrainingMode.EXAMPLE,
+                NeuralNetworkBuilder.Optimizer.SGD,
+                null,
+                false,
+                MathUtils.defaultRandom(),
                 sizes);
     }
 
@@ -177,9 +325,11 @@ public class NeuralNetwork implements Cloneable {
      * @param inputs testing sample
      * @return values outputted by the ANN
      */
+    @Override
     public double[] feedForward(final double[] inputs) {
         validateInput(inputs);
-        return feedForward(inputs, null, null);
+        final double[] outputs = feedForward(inputs, workspaces.get());
+        return Arrays.copyOf(outputs, outputs.length);
     }
 
     /**
@@ -188,11 +338,109 @@ public class NeuralNetwork implements Cloneable {
      * @param inputs testing sample
      * @return index of highest output value c, 0 <= c < number_outputs
      */
+    @Override
     public int classify(final double[] inputs) {
-        final double[] outputs = this.feedForward(inputs);
-        return IntStream.range(0, outputs.length)
-                .reduce((a, b) -> outputs[a] < outputs[b] ? b : a)
-                .orElse(-1);
+        validateInput(inputs);
+        return MathUtils.getResult(feedForward(inputs, workspaces.get()));
+    }
+
+    /**
+     * Computes nn's values for many samples at once
+     * <p>
+     * Samples are evaluated in chunks with matrix-matrix products, in parallel on the network's workers.
+     * Only the parameters are shared, so any number of threads may call the inference methods
+     * concurrently as long as nobody is training the network at the same time.
+     *
+     * @param inputs testing samples
+     * @return values outputted by the ANN, one row per sample
+     */
+    @Override
+    public double[][] predictBatch(final double[][] inputs) {
+        final int outputs = sizes[sizes.length - 1];
+        final double[][] predictions = new double[inputs.length][];
+        predict(inputs, (from, count, result) -> {
+            for (int b = 0; b < count; ++b) {
+                predictions[from + b] = Arrays.copyOfRange(result, b * outputs, (b + 1) * outputs);
+            }
+        });
+        return predictions;
+    }
+
+    /**
+     * Given many input sets returns their associated classes, see predictBatch
+     *
+     * @param inputs testing samples
+     * @return for every sample the index of its highest output value
+     */
+    @Override
+    public int[] classifyBatch(final double[][] inputs) {
+        final int outputs = sizes[sizes.length - 1];
+        final int[] classes = new int[inputs.length];
+        predict(inputs, (from, count, result) -> {
+            for (int b = 0; b < count; ++b) {
+                classes[from + b] = MathUtils.getResult(result, b * outputs, outputs);
+            }
+        });
+        return classes;
+    }
+
+    private void predict(final double[][] inputs, final PredictionConsumer consumer) {
+        for (double[] input : inputs) {
+            validateInput(input);
+        }
+        final int chunks = (inputs.length + PREDICTION_CHUNK - 1) / PREDICTION_CHUNK;
+        final PredictionTask task = new PredictionTask(inputs, consumer, 0, chunks);
+        if (!parallel() || chunks <= 1) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * Receives the outputs of samples [from, from + count), packed row-major
+     */
+    private interface PredictionConsumer {
+        void accept(int from, int count, double[] outputs);
+    }
+
+    /**
+     * Evaluates a range of chunks, splitting the range between workers
+     */
+    private class PredictionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] inputs;
+        private final PredictionConsumer consumer;
+        private final int from;
+        private final int to;
+
+        private PredictionTask(final double[][] inputs, final PredictionConsumer consumer, final int from, final int to) {
+            this.inputs = inputs;
+            this.consumer = consumer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && pool != null && getPool() == pool) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new PredictionTask(inputs, consumer, from, middle), new PredictionTask(inputs, consumer, middle, to));
+                return;
+            }
+            final int columns = sizes[0];
+            final BatchWorkspace workspace = batchWorkspaces.get();
+            workspace.ensureCapacity(PREDICTION_CHUNK);
+            for (int chunk = from; chunk < to; ++chunk) {
+                final int first = chunk * PREDICTION_CHUNK;
+                final int count = Math.min(inputs.length, first + PREDICTION_CHUNK) - first;
+                for (int b = 0; b < count; ++b) {
+                    System.arraycopy(inputs[first + b], 0, workspace.activations[0], b * columns, columns);
+                }
+                consumer.accept(first, count, feedForward(count, workspace));
+            }
+        }
     }
 
     /**
@@ -202,133 +450,447 @@ public class NeuralNetwork implements Cloneable {
      * @param batch given training samples
      */
     public void sgd(final List<TrainingExample> batch) {
-        final double eta = learningRate;//possible use of learning rate decay on eta?
-
-        double[][] deviationBiases = MathUtils.makeEmptyCopy(biases);
-        double[][][] deviationWeights = MathUtils.makeEmptyCopy(weights);
-        for (final TrainingExample t : batch) {
-            validateInput(t.getFeatures());
-            final Deviations<double[][], double[][][]> deviations = backPropagation(t);
-            deviationBiases = MathUtils.add(deviations.deviationBiases, deviationBiases);
-            deviationWeights = MathUtils.add(deviations.deviationWeights, deviationWeights);
+        final int count = batch.size();
+        if (batchInputs.length < count) {
+            batchInputs = new double[count][];
+            batchTargets = new double[count][];
         }
-
-        for (int i = 0; i < weights.length; ++i) {
-            for (int j = 0; j < weights[i].length; ++j) {
-                for (int k = 0; k < weights[i][j].length; ++k) {
-                    weights[i][j][k] -= eta * deviationWeights[i][j][k];
-                }
-            }
+        for (int i = 0; i < count; ++i) {
+            batchInputs[i] = batch.get(i).getFeatures();
+            batchTargets[i] = batch.get(i).getTargetValue();
         }
+        sgd(batchInputs, batchTargets, count);
+    }
 
-        for (int i = 0; i < biases.length; ++i) {
-            for (int j = 0; j < biases[i].length; ++j) {
-                biases[i][j] -= eta * biases[i][j];
-            }
+    /**
+     * Performs Stochastic Gradient Descent Algorithm
+     * on the given decoded mini-batch
+     *
+     * @param batch given training samples
+     */
+    public void sgd(final MiniBatch batch) {
+        sgd(batch.getFeatures(), batch.getTargets(), batch.size());
+    }
+
+    /**
+     * The batch is cut in shards of SHARD_SIZE samples whose partial gradients are computed
+     * by the workers (or by the calling thread) and summed pairwise along a tree that only depends
+     * on the number of shards, so the update is the same whatever the number of workers.
+     */
+    private void sgd(final double[][] inputs, final double[][] targets, final int count) {
+        final int shards = (count + SHARD_SIZE - 1) / SHARD_SIZE;
+        if (shards == 0) {
+            return;
+        }
+        if (batchGradient == null) {
+            batchGradient = parameters.emptyCopy();
         }
 
+        final ShardTask task = new ShardTask(inputs, targets, count, 0, shards, batchGradient);
+        if (!parallel() || shards == 1) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        applyGradient(batchGradient);
     }
 
+    /**
+     * Writes the gradient of a range of shards into the given buffer: the left half is computed
+     * into the same buffer, the right half into a spare one that is then added to it
+     */
+    private class ShardTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] inputs;
+        private final double[][] targets;
+        private final int count;
+        private final int from;
+        private final int to;
+        private final Parameters gradient;
+
+        private ShardTask(final double[][] inputs, final double[][] targets, final int count, final int from, final int to,
+                          final Parameters gradient) {
+            this.inputs = inputs;
+            this.targets = targets;
+            this.count = count;
+            this.from = from;
+            this.to = to;
+            this.gradient = gradient;
+        }
 
-    private Deviations<double[][], double[][][]> backPropagation(final TrainingExample t) {
-        final double[][] deviationBiases = MathUtils.makeEmptyCopy(biases);
-        final double[][][] deviationWeights = MathUtils.makeEmptyCopy(weights);
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                gradient.clear();
+                final int first = from * SHARD_SIZE;
+                computeGradient(inputs, targets, first, Math.min(count, first + SHARD_SIZE), gradient);
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            Parameters spare = spareGradients.poll();
+            if (spare == null) {
+                spare = parameters.emptyCopy();
+            }
+            final ShardTask left = new ShardTask(inputs, targets, count, from, middle, gradient);
+            final ShardTask right = new ShardTask(inputs, targets, count, middle, to, spare);
+            if (pool != null && getPool() == pool) {
+                invokeAll(left, right);
+            } else {
+                left.compute();
+                right.compute();
+            }
+            MathUtils.addInPlace(gradient.values, spare.values);
+            spareGradients.push(spare);
+        }
+    }
 
-        final List<double[]> activations = new ArrayList<>();
-        final List<double[]> zs = new ArrayList<>();
-        final double[] result = this.feedForward(t.getFeatures(), activations, zs);
+    /**
+     * Adds the gradients of the samples [from, to) to the given buffer, using the configured training mode
+     */
+    void computeGradient(final double[][] inputs, final double[][] targets, final int from, final int to, final Parameters gradient) {
+        if (trainingMode == NeuralNetworkBuilder.TrainingMode.BATCH) {
+            computeBatchGradient(inputs, targets, from, to, gradient);
+        } else {
+            computeExampleGradient(inputs, targets, from, to, gradient);
+        }
+    }
 
-        final double[] errors = computeCost(result, t.getTargetValue());
-        final double[] lastOutDerivative = outputFunction.derivative(zs.get(zs.size() - 1));
+    /**
+     * Adds the gradients of the samples [from, to) to the given buffer, one back-propagation per sample
+     */
+    private void computeExampleGradient(final double[][] inputs, final double[][] targets, final int from, final int to, final Parameters gradient) {
+        final Workspace workspace = workspaces.get();
+        for (int i = from; i < to; ++i) {
+            validateInput(inputs[i]);
+            backPropagation(inputs[i], targets[i], workspace, gradient.values);
+        }
+    }
 
+    /**
+     * Adds the gradients of the samples [from, to) to the given buffer by packing them into matrices
+     * and back-propagating them with matrix-matrix products
+     */
+    private void computeBatchGradient(final double[][] inputs, final double[][] targets, final int from, final int to, final Parameters gradient) {
+        final int count = to - from;
+        final int columns = sizes[0];
+        final int outputs = sizes[sizes.length - 1];
+
+        final BatchWorkspace workspace = batchWorkspaces.get();
+        workspace.ensureCapacity(count);
+        for (int i = 0; i < count; ++i) {
+            validateInput(inputs[from + i]);
+            System.arraycopy(inputs[from + i], 0, workspace.activations[0], i * columns, columns);
+            System.arraycopy(targets[from + i], 0, workspace.targets, i * outputs, outputs);
+        }
+        if (count > 0) {
+            backPropagation(count, workspace, gradient.values);
+        }
+    }
 
-        double[] delta = MathUtils.multiply(errors, lastOutDerivative);//deviation on output layer: derivative * (target - out)
+    /**
+     * Updates the weights and biases in place from the given gradient, using the configured optimizer
+     * and weight decay
+     * <p>
+     * It does not synchronize, concurrent callers race on the shared values and optimizer state as in Hogwild!
+     */
+    void applyGradient(final Parameters deviations) {
+        updater.update(parameters, deviations.values, learningRate, l2);//possible use of learning rate decay?
+    }
 
-        deviationBiases[deviationBiases.length - 1] = delta;
-        final double[] lastInput = activations.get(activations.size() - 2);
 
-        for (int i = 0; i < delta.length; ++i) {
-            for (int j = 0; j < lastInput.length; ++j) {
-                deviationWeights[deviationWeights.length - 1][i][j] = delta[i] * lastInput[j];
-            }
-        }
+    /**
+     * Adds the gradient of the cost on one sample to deviation
+     */
+    private void backPropagation(final double[] inputs, final double[] target, final Workspace workspace, final double[] deviation) {
+        final double[] values = parameters.values;
 
-        final int numberOfLayers = this.sizes.length;
-        for (int i = numberOfLayers - 2; i > 0; --i) {//hidden layers
-            final double[] out = zs.get(i - 1);
-            final double[] derivative = activationFunction.derivative(out);
+        final double[] result = this.feedForward(inputs, workspace);
 
-            final double[][] weightsToUpdate = weights[i];
+        final int lastLayer = parameters.layers() - 1;
+        final double[] outputZs = workspace.zs[lastLayer];
+        double[] delta = workspace.deltas[lastLayer];
+        outputDelta(result, target, outputZs, delta, delta.length);
 
-            final double[][] transposesWeights = MathUtils.transpose(weightsToUpdate);
-            final double[] newDelta = new double[derivative.length];
+        for (int layer = lastLayer; layer >= 0; --layer) {
+            final int rows = parameters.rows(layer);
+            final int columns = parameters.columns(layer);
+            final double[] input = workspace.activations[layer];
 
+            MathUtils.axpy(1, delta, 0, deviation, parameters.biasOffset(layer), rows);
 
-            for (int h = 0; h < derivative.length; ++h) {//weights from h
-                final double sum = MathUtils.dot(delta, transposesWeights[h]);
-                final double v = sum * derivative[h];
-                newDelta[h] = v;
+            final int weightOffset = parameters.weightOffset(layer);
+            if (layer == 0 && workspace.sparse) {
+                for (int j = 0; j < rows; ++j) {
+                    MathUtils.sparseAxpy(delta[j], input, 0, workspace.nonZeros, 0, workspace.nonZeroCount, deviation, weightOffset + j * columns);
+                }
+            } else {
+                for (int j = 0; j < rows; ++j) {
+                    MathUtils.axpy(delta[j], input, 0, deviation, weightOffset + j * columns, columns);
+                }
             }
 
-            delta = newDelta;
+            if (layer > 0) {//propagate to the hidden layer feeding this one
+                final double[] zs = workspace.zs[layer - 1];
+                final double[] newDelta = workspace.deltas[layer - 1];
+                Arrays.fill(newDelta, 0);
+                for (int j = 0; j < rows; ++j) {//walk the weights row by row instead of transposing them
+                    MathUtils.axpy(delta[j], values, weightOffset + j * columns, newDelta, 0, columns);
+                }
+                for (int h = 0; h < columns; ++h) {
+                    newDelta[h] *= activationFunction.derivative(zs[h]);
+                }
+                delta = newDelta;
+            }
+        }
 
-            deviationBiases[i - 1] = delta;
+    }
 
 
-            for (int j = 0; j < deviationWeights[i - 1].length; ++j) {
-                for (int q = 0; q < deviationWeights[i - 1][j].length; ++q) {
-                    final double[] act = activations.get(i - 1);
-                    final double v = act[q];
-                    deviationWeights[i - 1][j][q] = delta[j] * v;
+    /**
+     * Forward pass storing every intermediate result in the given workspace
+     *
+     * @return the workspace's output buffer
+     */
+    private double[] feedForward(final double[] inputs, final Workspace workspace) {
+        workspace.activations[0] = inputs;
+        workspace.nonZeroCount = MathUtils.nonZeros(inputs, 0, sizes[0], workspace.nonZeros, 0);
+        workspace.sparse = workspace.nonZeroCount <= SPARSE_DENSITY * sizes[0];
+        final double[] values = parameters.values;
+        final int numberOfLayers = this.sizes.length;
+        for (int i = 0; i < numberOfLayers - 1; ++i) {
+            final int numberOfNeurons = parameters.rows(i);
+            final int columns = parameters.columns(i);
+            final int weightOffset = parameters.weightOffset(i);
+            final int biasOffset = parameters.biasOffset(i);
+            final double[] input = workspace.activations[i];
+            final double[] next = workspace.zs[i];
+            if (i == 0 && workspace.sparse) {
+                for (int j = 0; j < numberOfNeurons; ++j) {
+                    next[j] = values[biasOffset + j]
+                            + MathUtils.sparseDot(values, weightOffset + j * columns, input, 0, workspace.nonZeros, 0, workspace.nonZeroCount);
+                }
+            } else {
+                for (int j = 0; j < numberOfNeurons; ++j) {
+                    next[j] = values[biasOffset + j] + MathUtils.dot(values, weightOffset + j * columns, input, 0, columns);
                 }
             }
+            if (i == numberOfLayers - 2) {//last layer
+                outputFunction.function(next, workspace.activations[i + 1]);
+            } else {
+                activationFunction.function(next, workspace.activations[i + 1]);
+            }
+        }
 
+        return workspace.output();
+    }
 
-        }
+    /**
+     * Adds the gradient of the cost on the first count packed samples to deviation
+     * <p>
+     * Produces exactly the same sums as calling the per-example back-propagation in batch order.
+     */
+    private void backPropagation(final int count, final BatchWorkspace workspace, final double[] deviation) {
+        final double[] values = parameters.values;
 
+        final double[] result = this.feedForward(count, workspace);
 
-        return new Deviations<>(deviationBiases, deviationWeights);
+        final int lastLayer = parameters.layers() - 1;
+        final double[] outputZs = workspace.zs[lastLayer];
+        double[] delta = workspace.deltas[lastLayer];
+        outputDelta(result, workspace.targets, outputZs, delta, count * parameters.rows(lastLayer));
 
-    }
+        for (int layer = lastLayer; layer >= 0; --layer) {
+            final int rows = parameters.rows(layer);
+            final int columns = parameters.columns(layer);
+            final int weightOffset = parameters.weightOffset(layer);
 
+            for (int b = 0; b < count; ++b) {
+                MathUtils.axpy(1, delta, b * rows, deviation, parameters.biasOffset(layer), rows);
+            }
+            if (layer == 0 && workspace.sparse) {//same sums as gemmTN, which also adds the samples in order
+                for (int b = 0; b < count; ++b) {
+                    for (int j = 0; j < rows; ++j) {
+                        MathUtils.sparseAxpy(delta[b * rows + j], workspace.activations[0], b * columns,
+                                workspace.nonZeros, b * columns, workspace.nonZeroCounts[b], deviation, weightOffset + j * columns);
+                    }
+                }
+            } else {
+                MathUtils.gemmTN(rows, columns, count, delta, 0, workspace.activations[layer], 0, deviation, weightOffset);
+            }
 
-    private double[] feedForward(double[] inputs, final List<double[]> activations, final List<double[]> zs) {
-        if (activations != null) {
-            activations.add(inputs);
+            if (layer > 0) {//propagate to the hidden layer feeding this one
+                final double[] zs = workspace.zs[layer - 1];
+                final double[] newDelta = workspace.deltas[layer - 1];
+                Arrays.fill(newDelta, 0, count * columns, 0);
+                MathUtils.gemmNN(count, columns, rows, delta, 0, values, weightOffset, newDelta, 0);
+                for (int i = 0; i < count * columns; ++i) {
+                    newDelta[i] *= activationFunction.derivative(zs[i]);
+                }
+                delta = newDelta;
+            }
         }
+    }
+
+    /**
+     * Forward pass of the first count packed samples
+     *
+     * @return the workspace's output matrix, count x outputs
+     */
+    private double[] feedForward(final int count, final BatchWorkspace workspace) {
+        final double[] values = parameters.values;
         final int numberOfLayers = this.sizes.length;
+        int nonZeros = 0;
+        for (int b = 0; b < count; ++b) {
+            workspace.nonZeroCounts[b] = MathUtils.nonZeros(workspace.activations[0], b * sizes[0], sizes[0], workspace.nonZeros, b * sizes[0]);
+            nonZeros += workspace.nonZeroCounts[b];
+        }
+        workspace.sparse = nonZeros <= SPARSE_DENSITY * count * sizes[0];
         for (int i = 0; i < numberOfLayers - 1; ++i) {
-            final int numberOfNeurons = biases[i].length;
-            double[] next = new double[numberOfNeurons];
-            for (int j = 0; j < numberOfNeurons; ++j) {
-                next[j] = biases[i][j] + MathUtils.dot(weights[i][j], inputs);
+            final int numberOfNeurons = parameters.rows(i);
+            final int columns = parameters.columns(i);
+            final int biasOffset = parameters.biasOffset(i);
+            final double[] next = workspace.zs[i];
+            if (i == 0 && workspace.sparse) {
+                for (int b = 0; b < count; ++b) {
+                    for (int j = 0; j < numberOfNeurons; ++j) {
+                        next[b * numberOfNeurons + j] = MathUtils.sparseDot(values, parameters.weightOffset(i) + j * columns,
+                                workspace.activations[0], b * columns, workspace.nonZeros, b * columns, workspace.nonZeroCounts[b]);
+                    }
+                }
+            } else {
+                Arrays.fill(next, 0, count * numberOfNeurons, 0);
+                MathUtils.gemmNT(count, numberOfNeurons, columns, workspace.activations[i], 0, values, parameters.weightOffset(i), next, 0);
             }
-            if (zs != null) {
-                zs.add(Arrays.copyOf(next, next.length));
+            for (int b = 0; b < count; ++b) {
+                MathUtils.axpy(1, values, biasOffset, next, b * numberOfNeurons, numberOfNeurons);
             }
             if (i == numberOfLayers - 2) {//last layer
-                inputs = outputFunction.function(next);
+                outputFunction.function(next, workspace.activations[i + 1], count, numberOfNeurons);
             } else {
-                inputs = activationFunction.function(next);
+                activationFunction.function(next, workspace.activations[i + 1], count * numberOfNeurons);
             }
-            if (activations != null) {
-                activations.add(Arrays.copyOf(inputs, inputs.length));
+        }
+
+        return workspace.output();
+    }
+
+    /**
+     * Error of the output layer with respect to its weighted input, over the first length values
+     * <p>
+     * For MEAN_SQUARED: (output - target) * f'(z).
+     * For CROSS_ENTROPY and LOG_LIKELIHOOD the derivative of the sigmoid / softmax cancels out
+     * with the one of the cost, leaving output - target.
+     */
+    private void outputDelta(final double[] output, final double[] target, final double[] zs, final double[] delta, final int length) {
+        if (costFunction == NeuralNetworkBuilder.CostFunction.MEAN_SQUARED) {
+            for (int i = 0; i < length; ++i) {//deviation on output layer: derivative * (out - target)
+                delta[i] = (output[i] - target[i]) * outputFunction.derivative(zs[i]);
+            }
+        } else {
+            for (int i = 0; i < length; ++i) {
+                delta[i] = output[i] - target[i];
+            }
+        }
+    }
+
+    /**
+     * Value of the configured cost on one sample, the gradients computed by back-propagation are its derivatives
+     *
+     * @param output values outputted by the ANN
+     * @param target desired values
+     */
+    double cost(final double[] output, final double[] target) {
+        double cost = 0;
+        for (int i = 0; i < output.length; ++i) {
+            switch (costFunction) {
+                case MEAN_SQUARED:
+                    cost += 0.5 * (output[i] - target[i]) * (output[i] - target[i]);
+                    break;
+                case CROSS_ENTROPY:
+                    if (outputFunction instanceof ActivationFunction.SoftMax) {
+                        cost -= target[i] * safeLog(output[i]);
+                    } else {
+                        cost -= target[i] * safeLog(output[i]) + (1 - target[i]) * safeLog(1 - output[i]);
+                    }
+                    break;
+                case LOG_LIKELIHOOD:
+                    cost -= target[i] * safeLog(output[i]);//-ln of the output of the desired class
+                    break;
             }
         }
+        return cost;
+    }
+
+    private static double safeLog(final double x) {
+        return Math.log(Math.max(x, Double.MIN_NORMAL));
+    }
+
+    Parameters parameters() {
+        return parameters;
+    }
+
+    ActivationFunction activationFunction() {
+        return activationFunction;
+    }
+
+    ActivationFunction outputFunction() {
+        return outputFunction;
+    }
+
+    double learningRate() {
+        return learningRate;
+    }
 
-        return inputs;
+    double momentum() {
+        return momentum;
     }
 
-    private double[] computeCost(final double[] output, final double[] desired) {
-        return MathUtils.add(output, MathUtils.minus(desired));
+    double l2() {
+        return l2;
     }
 
+    NeuralNetworkBuilder.CostFunction costFunction() {
+        return costFunction;
+    }
 
-    private double[] crossEntropy(final double[] output, final double[] desired) {//fixme
-        return MathUtils.add(MathUtils.multiply(MathUtils.minus(desired), MathUtils.log(output)), MathUtils.minus(MathUtils.multiply(MathUtils.add(1, MathUtils.minus(desired)), MathUtils.log(MathUtils.add(1, MathUtils.minus(output))))));
+    NeuralNetworkBuilder.TrainingMode trainingMode() {
+        return trainingMode;
     }
 
-    private void validateSizes(final int[] sizes) {
+    NeuralNetworkBuilder.Optimizer optimizer() {
+        return optimizer;
+    }
+
+    /**
+     * SoftMax is only supported on the output layer and with a cost whose delta is fused with it
+     */
+    static void validateFunctions(final ActivationFunction activationFunction, final ActivationFunction outputFunction,
+                                  final NeuralNetworkBuilder.CostFunction costFunction) {
+        if (activationFunction instanceof ActivationFunction.SoftMax) {
+            throw new IllegalArgumentException("SoftMax can only be used on the output layer");
+        }
+        final boolean softMax = outputFunction instanceof ActivationFunction.SoftMax;
+        switch (costFunction) {
+            case MEAN_SQUARED:
+                if (softMax) {
+                    throw new IllegalArgumentException("SoftMax output needs the CROSS_ENTROPY or LOG_LIKELIHOOD cost");
+                }
+                break;
+            case CROSS_ENTROPY:
+                if (!softMax && !(outputFunction instanceof ActivationFunction.Sigmoid)) {
+                    throw new IllegalArgumentException("CROSS_ENTROPY needs a SIGMOID or SOFT_MAX output");
+                }
+                break;
+            case LOG_LIKELIHOOD:
+                if (!softMax) {
+                    throw new IllegalArgumentException("LOG_LIKELIHOOD needs a SOFT_MAX output");
+                }
+                break;
+        }
+    }
+
+    static int[] validateSizes(final int[] sizes) {
         if (sizes.length < 2) {
             throw new IllegalArgumentException("Ann needs at least an input and an output layer");
         }
@@ -337,6 +899,7 @@ public class NeuralNetwork implements Cloneable {
                 throw new IllegalArgumentException("All layers must have at least one neural unit");
             }
         }
+        return sizes;
     }
 
 
@@ -351,21 +914,10 @@ public class NeuralNetwork implements Cloneable {
     public String toString() {
         return "NeuralNetwork{" +
                 "activationFunction=" + activationFunction +
-                ", biases=" + Arrays.toString(biases) +
-                ", weights=" + Arrays.toString(weights) +
+                ", parameters=" + parameters +
                 ", sizes=" + Arrays.toString(sizes) +
                 '}';
     }
 
-    private class Deviations<X, Y> {
-        private final X deviationBiases;
-        private final Y deviationWeights;
-
-        private Deviations(X x, Y y) {
-            this.deviationBiases = x;
-            this.deviationWeights = y;
-        }
-    }
-
 
 }
@@ -1,5 +1,8 @@
 package ro.ubbcluj.cs.ann.impl;
 
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 public class NeuralNetworkBuilder {
 
     private int[] sizes;
@@ -10,6 +13,11 @@ public class NeuralNetworkBuilder {
     private double momentum = 0;
     private double l2 = 0;
     private double eta = 0.3;
+    private TrainingMode trainingMode = TrainingMode.EXAMPLE;
+    private Optimizer optimizer = Optimizer.SGD;
+    private int threads = 1;
+    private ForkJoinPool pool;
+    private Long seed;
 
 
     public NeuralNetworkBuilder() {
@@ -26,6 +34,9 @@ public class NeuralNetworkBuilder {
     }
 
     public NeuralNetworkBuilder withCostFunction(CostFunction costFunction) {
+        if (costFunction == null) {
+            throw new IllegalArgumentException("Can't set parameter to null");
+        }
         this.costFunction = costFunction;
         return this;
     }
@@ -35,7 +46,14 @@ public class NeuralNetworkBuilder {
         return this;
     }
 
+    /**
+     * L2 weight decay, every update of a weight w uses gradient + l2 * w, where gradient is summed over the
+     * mini-batch; biases are not decayed
+     */
     public NeuralNetworkBuilder withWeightDecayL2(final double l2) {
+        if (l2 < 0) {
+            throw new IllegalArgumentException("Weight decay must not be negative");
+        }
         this.l2 = l2;
         return this;
     }
@@ -64,8 +82,79 @@ public class NeuralNetworkBuilder {
         return this;
     }
 
+    public NeuralNetworkBuilder withTrainingMode(TrainingMode trainingMode) {
+        if (trainingMode == null) {
+            throw new IllegalArgumentException("Can't set parameter to null");
+        }
+        this.trainingMode = trainingMode;
+        return this;
+    }
+
+    /**
+     * Rule updating the parameters from each mini-batch gradient, the momentum coefficient is used by
+     * MOMENTUM and NESTEROV; ADAM and RMS_PROP usually need a much smaller learning rate than SGD
+     */
+    public NeuralNetworkBuilder withOptimizer(Optimizer optimizer) {
+        if (optimizer == null) {
+            throw new IllegalArgumentException("Can't set parameter to null");
+        }
+        this.optimizer = optimizer;
+        return this;
+    }
+
+    /**
+     * Number of workers computing the gradients of each mini-batch in parallel
+     */
+    public NeuralNetworkBuilder withThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Workers shared with other networks instead of a pool of its own, the caller shuts them down
+     * once no network uses them; the number of threads is then the parallelism of the pool
+     */
+    public NeuralNetworkBuilder withPool(final ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Seed for the initial weights, the training is then reproducible whatever the number of threads
+     */
+    public NeuralNetworkBuilder withSeed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Builds the network, with a pool of its own shut down by NeuralNetwork.close unless withPool was given
+     */
     public NeuralNetwork build() {
-        return new NeuralNetwork(activationFunction,outputFunction, weightsInitialization, costFunction, eta, momentum, l2, sizes);
+        return pool != null ? build(pool, false) : build(NeuralNetwork.workers(threads), true);
+    }
+
+    private NeuralNetwork build(final ForkJoinPool pool, final boolean ownsPool) {
+        final Random random = seed == null ? MathUtils.defaultRandom() : new Random(seed);
+        return new NeuralNetwork(activationFunction, outputFunction, weightsInitialization, costFunction, eta, momentum, l2, trainingMode, optimizer, pool, ownsPool, random, sizes);
+    }
+
+    /**
+     * Builds the single precision variant, initialized exactly like build() and rounded to float
+     * <p>
+     * The training mode and the number of threads are ignored,
+     * it trains per example on the calling thread with plain SGD updates.
+     *
+     * @throws IllegalStateException if an optimizer other than SGD is configured
+     */
+    public FloatNeuralNetwork buildSinglePrecision() {
+        if (optimizer != Optimizer.SGD) {
+            throw new IllegalStateException("The single precision network only supports the SGD optimizer, not " + optimizer);
+        }
+        return new FloatNeuralNetwork(build(null, false));//no workers, the float network trains on the calling thread
     }
 
 
@@ -76,7 +165,7 @@ public class NeuralNetworkBuilder {
         TanH(new ActivationFunction.TanH()),
         SOFT_PLUS(new ActivationFunction.SoftPlus()),
         LEAKY_ReLU(new ActivationFunction.LeakyReLU()),
-        SOFT_MAX(new ActivationFunction.SoftMax());//todo implementation needed
+        SOFT_MAX(new ActivationFunction.SoftMax());
 
         private ActivationFunction activationFunction;
         public double maxValue;
@@ -87,13 +176,64 @@ public class NeuralNetworkBuilder {
             this.maxValue = activationFunction.maxValue();
             this.minValue = activationFunction.minValue();
         }
+
+        ActivationFunction function() {
+            return activationFunction;
+        }
+
+        /**
+         * @return the constant whose function has the same type as the given one
+         */
+        static Activation of(final ActivationFunction activationFunction) {
+            for (Activation activation : values()) {
+                if (activation.activationFunction.getClass() == activationFunction.getClass()) {
+                    return activation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown activation function " + activationFunction.getClass().getSimpleName());
+        }
     }
 
     public enum WeightsInitialization {
         NORMAL, XAVIER, UNIFORM
     }
 
+    /**
+     * MEAN_SQUARED works with any output function.
+     * CROSS_ENTROPY needs a SIGMOID (one binary cross-entropy per output) or SOFT_MAX output,
+     * LOG_LIKELIHOOD a SOFT_MAX output; their output delta is then simply output - target.
+     */
     public enum CostFunction {
         MEAN_SQUARED, CROSS_ENTROPY, LOG_LIKELIHOOD
     }
+
+    /**
+     * EXAMPLE back-propagates one sample at a time,
+     * BATCH packs the mini-batch into matrices and uses blocked matrix-matrix products
+     */
+    public enum TrainingMode {
+        EXAMPLE, BATCH
+    }
+
+    /**
+     * Parameter update rules, see Updater
+     */
+    public enum Optimizer {
+        SGD, MOMENTUM, NESTEROV, ADAM, RMS_PROP;
+
+        Updater updater(final double momentum, final int size) {
+            switch (this) {
+                case MOMENTUM:
+                    return new Updater.Momentum(momentum, size);
+                case NESTEROV:
+                    return new Updater.Nesterov(momentum, size);
+                case ADAM:
+                    return new Updater.Adam(size);
+                case RMS_PROP:
+                    return new Updater.RmsProp(size);
+                default:
+                    return new Updater.Sgd();
+            }
+        }
+    }
 }
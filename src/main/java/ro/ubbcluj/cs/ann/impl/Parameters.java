@@ -0,0 +1,134 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import java.util.Arrays;
+
+/**
+ * Contiguous storage for the weights and biases of a NeuralNetwork
+ * <p>
+ * All layers live in a single row-major array, each layer's weight block followed by its bias block:
+ * <p>
+ * values[weightOffset(layer) + neuron_target * columns(layer) + neuron_source]
+ * <p>
+ * values[biasOffset(layer) + neuron_target]
+ * <p>
+ * The same layout is used for gradients, so a whole model can be copied, cleared or accumulated with a single loop.
+ */
+final class Parameters {
+
+    /**
+     * Neuron layers sizes
+     */
+    private final int[] sizes;
+
+    /**
+     * Start of each layer's weight block
+     */
+    private final int[] weightOffsets;
+
+    /**
+     * Start of each layer's bias block
+     */
+    private final int[] biasOffsets;
+
+    /**
+     * Flat parameter values
+     */
+    final double[] values;
+
+    Parameters(final int... sizes) {
+        this.sizes = sizes;
+        this.weightOffsets = new int[sizes.length - 1];
+        this.biasOffsets = new int[sizes.length - 1];
+
+        int offset = 0;
+        for (int layer = 0; layer < sizes.length - 1; ++layer) {
+            weightOffsets[layer] = offset;
+            offset += sizes[layer + 1] * sizes[layer];
+            biasOffsets[layer] = offset;
+            offset += sizes[layer + 1];
+        }
+        this.values = new double[offset];
+    }
+
+    /**
+     * Creates a copy of the given parameters, sharing only the (immutable) layout
+     *
+     * @param parameters parameters to copy
+     */
+    Parameters(final Parameters parameters) {
+        this.sizes = parameters.sizes;
+        this.weightOffsets = parameters.weightOffsets;
+        this.biasOffsets = parameters.biasOffsets;
+        this.values = parameters.values.clone();
+    }
+
+    /**
+     * @return zero filled parameters having the same layout
+     */
+    Parameters emptyCopy() {
+        return new Parameters(sizes);
+    }
+
+    /**
+     * Overwrites the values with the given ones, the layouts must match
+     *
+     * @param parameters source parameters
+     */
+    void copyFrom(final Parameters parameters) {
+        System.arraycopy(parameters.values, 0, values, 0, values.length);
+    }
+
+    void clear() {
+        Arrays.fill(values, 0);
+    }
+
+    int layers() {
+        return weightOffsets.length;
+    }
+
+    /**
+     * @return number of neurons fed by the given layer
+     */
+    int rows(final int layer) {
+        return sizes[layer + 1];
+    }
+
+    /**
+     * @return number of neurons feeding the given layer
+     */
+    int columns(final int layer) {
+        return sizes[layer];
+    }
+
+    int weightOffset(final int layer) {
+        return weightOffsets[layer];
+    }
+
+    int biasOffset(final int layer) {
+        return biasOffsets[layer];
+    }
+
+    int weightIndex(final int layer, final int target, final int source) {
+        return weightOffsets[layer] + target * sizes[layer] + source;
+    }
+
+    int biasIndex(final int layer, final int target) {
+        return biasOffsets[layer] + target;
+    }
+
+    int[] sizes() {
+        return sizes;
+    }
+
+    int size() {
+        return values.length;
+    }
+
+    @Override
+    public String toString() {
+        return "Parameters{" +
+                "sizes=" + Arrays.toString(sizes) +
+                ", size=" + values.length +
+                '}';
+    }
+}
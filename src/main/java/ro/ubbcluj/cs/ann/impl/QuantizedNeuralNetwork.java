@@ -0,0 +1,243 @@
+package ro.ubbcluj.cs.ann.impl;
+
+
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Post-training int8 quantization of a NeuralNetwork, for inference only
+ * <p>
+ * Every weight row (the weights feeding one neuron) is stored as int8 with its own scale, maxAbs(row) / 127.
+ * The input of every layer is quantized to int8 as well, with a scale calibrated on sample data: the largest
+ * absolute value the double network produces at that layer over the calibration samples.
+ * A neuron's weighted input is then the int32 dot product of the two int8 vectors, multiplied by the product
+ * of both scales, plus the bias, which is kept in float. Activations are computed as in NeuralNetwork.
+ * <p>
+ * The parameters take about 8 times less memory than the double ones.
+ */
+public class QuantizedNeuralNetwork implements Classifier {
+
+    private static final int INT8_MAX = 127;
+
+    /**
+     * Activation function
+     */
+    private final ActivationFunction activationFunction;
+
+    /**
+     * Activation function for the last layer
+     */
+    private final ActivationFunction outputFunction;
+
+    /**
+     * Neuron layers sizes
+     */
+    private final int[] sizes;
+
+    /**
+     * int8 weights, same row-major layout as the weight blocks of Parameters without the biases
+     */
+    private final byte[] weights;
+
+    /**
+     * Start of each layer's weights, and of each layer's rows in scales and biases
+     */
+    private final int[] weightOffsets;
+    private final int[] rowOffsets;
+
+    /**
+     * Per row: weight scale * input scale of the layer, converting the int32 dot product back to a real value
+     */
+    private final float[] scales;
+
+    private final float[] biases;
+
+    /**
+     * 1 / input scale of each layer
+     */
+    private final double[] inverseInputScales;
+
+    /**
+     * Size of the parameters of the double network this one was quantized from
+     */
+    private final long sourceBytes;
+
+    private final ThreadLocal<QuantizedWorkspace> workspaces;
+
+    /**
+     * Quantizes the given ANN
+     *
+     * @param neuralNetwork given trained ANN
+     * @param calibration   samples used to measure the range of every layer's input, typically a
+     *                      few hundred training examples
+     */
+    public QuantizedNeuralNetwork(final NeuralNetwork neuralNetwork, final List<TrainingExample> calibration) {
+        if (calibration.isEmpty()) {
+            throw new IllegalArgumentException("At least one calibration sample is needed");
+        }
+        final Parameters parameters = neuralNetwork.parameters();
+        this.activationFunction = neuralNetwork.activationFunction();
+        this.outputFunction = neuralNetwork.outputFunction();
+        this.sizes = parameters.sizes();
+        this.sourceBytes = (long) parameters.size() * Double.BYTES;
+
+        final int layers = parameters.layers();
+        this.weightOffsets = new int[layers];
+        this.rowOffsets = new int[layers];
+        int weightCount = 0;
+        int rowCount = 0;
+        for (int layer = 0; layer < layers; ++layer) {
+            weightOffsets[layer] = weightCount;
+            rowOffsets[layer] = rowCount;
+            weightCount += parameters.rows(layer) * parameters.columns(layer);
+            rowCount += parameters.rows(layer);
+        }
+        this.weights = new byte[weightCount];
+        this.scales = new float[rowCount];
+        this.biases = new float[rowCount];
+        this.inverseInputScales = new double[layers];
+
+        final double[] ranges = calibrate(parameters, calibration);
+        for (int layer = 0; layer < layers; ++layer) {
+            final double inputScale = ranges[layer] > 0 ? ranges[layer] / INT8_MAX : 1;
+            inverseInputScales[layer] = 1 / inputScale;
+            quantizeLayer(parameters, layer, inputScale);
+        }
+        this.workspaces = ThreadLocal.withInitial(() -> new QuantizedWorkspace(this.sizes));
+    }
+
+    @Override
+    public double[] feedForward(final double[] inputs) {
+        validateInput(inputs);
+        return feedForward(inputs, workspaces.get()).clone();
+    }
+
+    @Override
+    public int classify(final double[] inputs) {
+        validateInput(inputs);
+        return MathUtils.getResult(feedForward(inputs, workspaces.get()));
+    }
+
+    /**
+     * @return memory taken by the quantized weights, scales and biases
+     */
+    public long getParameterBytes() {
+        return weights.length + (long) (scales.length + biases.length) * Float.BYTES;
+    }
+
+    /**
+     * @return memory taken by the parameters of the double network this one was quantized from
+     */
+    public long getSourceParameterBytes() {
+        return sourceBytes;
+    }
+
+    /**
+     * Forward pass on int8 weights and inputs
+     *
+     * @return the workspace's output buffer
+     */
+    private double[] feedForward(final double[] inputs, final QuantizedWorkspace workspace) {
+        final int layers = weightOffsets.length;
+        double[] input = inputs;
+        for (int layer = 0; layer < layers; ++layer) {
+            final int rows = sizes[layer + 1];
+            final int columns = sizes[layer];
+            final byte[] quantized = workspace.inputs[layer];
+            quantize(input, quantized, inverseInputScales[layer]);
+
+            final double[] next = workspace.zs[layer];
+            final int weightOffset = weightOffsets[layer];
+            final int rowOffset = rowOffsets[layer];
+            for (int j = 0; j < rows; ++j) {
+                final int sum = MathUtils.dot(weights, weightOffset + j * columns, quantized, 0, columns);
+                next[j] = sum * (double) scales[rowOffset + j] + biases[rowOffset + j];
+            }
+            final ActivationFunction function = layer == layers - 1 ? outputFunction : activationFunction;
+            function.function(next, workspace.activations[layer]);
+            input = workspace.activations[layer];
+        }
+        return workspace.output();
+    }
+
+    /**
+     * Rounds every weight row of the layer to int8 and folds the input scale into the row scale
+     */
+    private void quantizeLayer(final Parameters parameters, final int layer, final double inputScale) {
+        final double[] values = parameters.values;
+        final int rows = parameters.rows(layer);
+        final int columns = parameters.columns(layer);
+        for (int j = 0; j < rows; ++j) {
+            final int from = parameters.weightIndex(layer, j, 0);
+            double max = 0;
+            for (int k = 0; k < columns; ++k) {
+                max = Math.max(max, Math.abs(values[from + k]));
+            }
+            final double scale = max > 0 ? max / INT8_MAX : 1;
+            final int to = weightOffsets[layer] + j * columns;
+            for (int k = 0; k < columns; ++k) {
+                weights[to + k] = (byte) Math.round(values[from + k] / scale);
+            }
+            scales[rowOffsets[layer] + j] = (float) (scale * inputScale);
+            biases[rowOffsets[layer] + j] = (float) values[parameters.biasIndex(layer, j)];
+        }
+    }
+
+    /**
+     * Runs the double network on the samples
+     *
+     * @return for every layer the largest absolute value of its input
+     */
+    private double[] calibrate(final Parameters parameters, final List<TrainingExample> calibration) {
+        final int layers = parameters.layers();
+        final double[] ranges = new double[layers];
+        final double[][] zs = new double[layers][];
+        final double[][] activations = new double[layers][];
+        for (int layer = 0; layer < layers; ++layer) {
+            zs[layer] = new double[parameters.rows(layer)];
+            activations[layer] = new double[parameters.rows(layer)];
+        }
+        for (TrainingExample trainingExample : calibration) {
+            double[] input = trainingExample.getFeatures();
+            validateInput(input);
+            for (int layer = 0; layer < layers; ++layer) {
+                for (double value : input) {
+                    ranges[layer] = Math.max(ranges[layer], Math.abs(value));
+                }
+                final int columns = parameters.columns(layer);
+                for (int j = 0; j < zs[layer].length; ++j) {
+                    zs[layer][j] = parameters.values[parameters.biasIndex(layer, j)]
+                            + MathUtils.dot(parameters.values, parameters.weightIndex(layer, j, 0), input, 0, columns);
+                }
+                (layer == layers - 1 ? outputFunction : activationFunction).function(zs[layer], activations[layer]);
+                input = activations[layer];
+            }
+        }
+        return ranges;
+    }
+
+    private static void quantize(final double[] input, final byte[] quantized, final double inverseScale) {
+        for (int i = 0; i < quantized.length; ++i) {
+            final long q = Math.round(input[i] * inverseScale);
+            quantized[i] = (byte) Math.max(-INT8_MAX, Math.min(INT8_MAX, q));
+        }
+    }
+
+    private void validateInput(final double[] input) {
+        if (input.length != this.sizes[0]) {
+            throw new IllegalArgumentException("Invalid number of inputs, expected " + this.sizes[0]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "QuantizedNeuralNetwork{" +
+                "activationFunction=" + activationFunction +
+                ", size=" + weights.length +
+                ", sizes=" + Arrays.toString(sizes) +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Buffers of one forward pass of QuantizedNeuralNetwork
+ * <p>
+ * It must only be used by one thread at a time.
+ */
+final class QuantizedWorkspace {
+
+    /**
+     * inputs[layer] is the int8 input of layer
+     */
+    final byte[][] inputs;
+
+    /**
+     * zs[layer] is the weighted input (pre-activation) of layer
+     */
+    final double[][] zs;
+
+    /**
+     * activations[layer] is the output of layer
+     */
+    final double[][] activations;
+
+    QuantizedWorkspace(final int[] sizes) {
+        final int layers = sizes.length - 1;
+        this.inputs = new byte[layers][];
+        this.zs = new double[layers][];
+        this.activations = new double[layers][];
+        for (int layer = 0; layer < layers; ++layer) {
+            inputs[layer] = new byte[sizes[layer]];
+            zs[layer] = new double[sizes[layer + 1]];
+            activations[layer] = new double[sizes[layer + 1]];
+        }
+    }
+
+    /**
+     * @return the output of the last forward pass
+     */
+    double[] output() {
+        return activations[activations.length - 1];
+    }
+}
@@ -0,0 +1,58 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Plain loops, summing in index order
+ */
+final class ScalarKernels implements Kernels {
+
+    @Override
+    public double dot(final double[] a, final int aOffset, final double[] b, final int bOffset, final int length) {
+        double s = 0;
+        for (int i = 0; i < length; ++i) {
+            s += a[aOffset + i] * b[bOffset + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void axpy(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(final double[] a, final double[] b, final int length) {
+        for (int i = 0; i < length; ++i) {
+            a[i] *= b[i];
+        }
+    }
+
+    @Override
+    public void sigmoid(final double[] x, final double[] result, final int length) {
+        for (int i = 0; i < length; ++i) {
+            result[i] = 1.0 / (1.0 + Math.exp(-x[i]));
+        }
+    }
+
+    @Override
+    public float dot(final float[] a, final int aOffset, final float[] b, final int bOffset, final int length) {
+        float s = 0;
+        for (int i = 0; i < length; ++i) {
+            s += a[aOffset + i] * b[bOffset + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void axpy(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int length) {
+        for (int i = 0; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
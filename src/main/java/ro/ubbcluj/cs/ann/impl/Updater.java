@@ -0,0 +1,218 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Rule turning the gradient of a mini-batch into a parameter update
+ * <p>
+ * Updates are applied in place over the flat parameter array. Any state (velocity, moment estimates)
+ * has the layout of Parameters and is allocated once, when the updater is created,
+ * so an update does not allocate.
+ * <p>
+ * L2 weight decay is folded into the gradient of the weights inside the same loop, g + l2 * w,
+ * so it needs no extra sweep over the parameters; biases are not decayed.
+ * It is applied once per update, whether the gradient comes from one thread, from shards or from a Hogwild! worker.
+ */
+interface Updater {
+
+    /**
+     * Updates the weights and biases in place
+     *
+     * @param parameters   parameters to update
+     * @param gradient     gradient of the cost summed over the mini-batch, same layout as parameters
+     * @param learningRate step size
+     * @param l2           weight decay coefficient
+     */
+    default void update(final Parameters parameters, final double[] gradient, final double learningRate, final double l2) {
+        final double[] values = parameters.values;
+        for (int layer = 0; layer < parameters.layers(); ++layer) {
+            final int weights = parameters.weightOffset(layer);
+            update(values, gradient, weights, weights + parameters.rows(layer) * parameters.columns(layer), learningRate, l2);
+            final int biases = parameters.biasOffset(layer);
+            update(values, gradient, biases, biases + parameters.rows(layer), learningRate, 0);
+        }
+    }
+
+    /**
+     * Updates values[from, to) in place
+     *
+     * @param l2 weight decay coefficient, 0 for biases
+     */
+    void update(double[] values, double[] gradient, int from, int to, double learningRate, double l2);
+
+    /**
+     * @return an updater of the same kind with a copy of this one's state
+     */
+    Updater copy();
+
+    /**
+     * values -= eta * (gradient + l2 * values)
+     */
+    class Sgd implements Updater {
+        @Override
+        public void update(final double[] values, final double[] gradient, final int from, final int to,
+                           final double learningRate, final double l2) {
+            if (l2 == 0) {
+                MathUtils.axpy(-learningRate, gradient, from, values, from, to - from);
+                return;
+            }
+            for (int i = from; i < to; ++i) {
+                values[i] -= learningRate * (gradient[i] + l2 * values[i]);
+            }
+        }
+
+        @Override
+        public Updater copy() {
+            return this;
+        }
+    }
+
+    /**
+     * Classical momentum: velocity = mu * velocity - eta * gradient, values += velocity
+     */
+    class Momentum implements Updater {
+        final double momentum;
+        final double[] velocity;
+
+        Momentum(final double momentum, final int size) {
+            this(momentum, new double[size]);
+        }
+
+        private Momentum(final double momentum, final double[] velocity) {
+            this.momentum = momentum;
+            this.velocity = velocity;
+        }
+
+        @Override
+        public void update(final double[] values, final double[] gradient, final int from, final int to,
+                           final double learningRate, final double l2) {
+            for (int i = from; i < to; ++i) {
+                final double v = momentum * velocity[i] - learningRate * (gradient[i] + l2 * values[i]);
+                velocity[i] = v;
+                values[i] += v;
+            }
+        }
+
+        @Override
+        public Updater copy() {
+            return new Momentum(momentum, velocity.clone());
+        }
+    }
+
+    /**
+     * Nesterov accelerated gradient, in the form that keeps the parameters at their current
+     * (not look-ahead) position: values += -mu * velocity_previous + (1 + mu) * velocity
+     */
+    class Nesterov implements Updater {
+        final double momentum;
+        final double[] velocity;
+
+        Nesterov(final double momentum, final int size) {
+            this(momentum, new double[size]);
+        }
+
+        private Nesterov(final double momentum, final double[] velocity) {
+            this.momentum = momentum;
+            this.velocity = velocity;
+        }
+
+        @Override
+        public void update(final double[] values, final double[] gradient, final int from, final int to,
+                           final double learningRate, final double l2) {
+            for (int i = from; i < to; ++i) {
+                final double previous = velocity[i];
+                final double v = momentum * previous - learningRate * (gradient[i] + l2 * values[i]);
+                velocity[i] = v;
+                values[i] += (1 + momentum) * v - momentum * previous;
+            }
+        }
+
+        @Override
+        public Updater copy() {
+            return new Nesterov(momentum, velocity.clone());
+        }
+    }
+
+    /**
+     * Adam, with the bias corrections folded into the step size
+     */
+    class Adam implements Updater {
+        static final double BETA1 = 0.9;
+        static final double BETA2 = 0.999;
+        static final double EPSILON = 1e-8;
+
+        final double[] first;
+        final double[] second;
+        private long step;
+
+        Adam(final int size) {
+            this(new double[size], new double[size], 0);
+        }
+
+        private Adam(final double[] first, final double[] second, final long step) {
+            this.first = first;
+            this.second = second;
+            this.step = step;
+        }
+
+        @Override
+        public void update(final Parameters parameters, final double[] gradient, final double learningRate, final double l2) {
+            ++step;
+            final double alpha = learningRate * Math.sqrt(1 - Math.pow(BETA2, step)) / (1 - Math.pow(BETA1, step));
+            Updater.super.update(parameters, gradient, alpha, l2);
+        }
+
+        /**
+         * @param alpha learning rate with the bias corrections of the current step
+         */
+        @Override
+        public void update(final double[] values, final double[] gradient, final int from, final int to,
+                           final double alpha, final double l2) {
+            for (int i = from; i < to; ++i) {
+                final double g = gradient[i] + l2 * values[i];
+                final double m = BETA1 * first[i] + (1 - BETA1) * g;
+                final double v = BETA2 * second[i] + (1 - BETA2) * g * g;
+                first[i] = m;
+                second[i] = v;
+                values[i] -= alpha * m / (Math.sqrt(v) + EPSILON);
+            }
+        }
+
+        @Override
+        public Updater copy() {
+            return new Adam(first.clone(), second.clone(), step);
+        }
+    }
+
+    /**
+     * RMSProp: mean = rho * mean + (1 - rho) * gradient^2, values -= eta * gradient / sqrt(mean)
+     */
+    class RmsProp implements Updater {
+        static final double DECAY = 0.9;
+        static final double EPSILON = 1e-8;
+
+        final double[] mean;
+
+        RmsProp(final int size) {
+            this(new double[size]);
+        }
+
+        private RmsProp(final double[] mean) {
+            this.mean = mean;
+        }
+
+        @Override
+        public void update(final double[] values, final double[] gradient, final int from, final int to,
+                           final double learningRate, final double l2) {
+            for (int i = from; i < to; ++i) {
+                final double g = gradient[i] + l2 * values[i];
+                final double s = DECAY * mean[i] + (1 - DECAY) * g * g;
+                mean[i] = s;
+                values[i] -= learningRate * g / (Math.sqrt(s) + EPSILON);
+            }
+        }
+
+        @Override
+        public Updater copy() {
+            return new RmsProp(mean.clone());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package ro.ubbcluj.cs.ann.impl;
+
+/**
+ * Preallocated buffers for a forward/backward pass of a NeuralNetwork
+ * <p>
+ * A workspace is sized once from the layer sizes and reused for every sample,
+ * so a training step does not allocate in steady state.
+ * It must only be used by one thread at a time.
+ */
+final class Workspace {
+
+    /**
+     * activations[0] references the current input, activations[layer + 1] is the output of layer
+     */
+    final double[][] activations;
+
+    /**
+     * zs[layer] is the weighted input (pre-activation) of layer
+     */
+    final double[][] zs;
+
+    /**
+     * deltas[layer] is the error of layer with respect to its weighted input
+     */
+    final double[][] deltas;
+
+    /**
+     * Positions of the non-zero values of the current input, and whether the first layer uses them
+     */
+    final int[] nonZeros;
+    int nonZeroCount;
+    boolean sparse;
+
+    Workspace(final Parameters parameters) {
+        final int layers = parameters.layers();
+        this.activations = new double[layers + 1][];
+        this.zs = new double[layers][];
+        this.deltas = new double[layers][];
+        this.nonZeros = new int[parameters.columns(0)];
+        for (int layer = 0; layer < layers; ++layer) {
+            final int rows = parameters.rows(layer);
+            activations[layer + 1] = new double[rows];
+            zs[layer] = new double[rows];
+            deltas[layer] = new double[rows];
+        }
+    }
+
+    /**
+     * @return the output of the last forward pass
+     */
+    double[] output() {
+        return activations[activations.length - 1];
+    }
+}
@@ -1,16 +1,22 @@
 package ro.ubbcluj.cs.ann.validation;
 
 
-import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.Classifier;
+import ro.ubbcluj.cs.io.Dataset;
 import ro.ubbcluj.cs.io.TrainingExample;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.IntStream;
 
 import static ro.ubbcluj.cs.ann.impl.MathUtils.getResult;
 
 public class Validator {
 
+    /**
+     * Number of samples decoded at once when validating a Dataset
+     */
+    private static final int CHUNK = 1024;
+
 
     /**
      * Compute the number of correctly classified instances
@@ -20,15 +26,11 @@ public class Validator {
      * @param testData      given set of test data
      * @return - Computed number of correct items
      */
-    public static int validateClassification(final NeuralNetwork neuralNetwork, final List<TrainingExample> testData) {
+    public static int validateClassification(final Classifier neuralNetwork, final List<TrainingExample> testData) {
+        final int[] predicted = neuralNetwork.classifyBatch(features(testData));
         int totalCorrect = 0;
-        for (TrainingExample trainingExample : testData) {
-            final double[] targetValue = trainingExample.getTargetValue();
-            final int predicted = neuralNetwork.classify(trainingExample.getFeatures());
-            final int actual = IntStream.range(0, targetValue.length)
-                    .reduce((a, b) -> targetValue[a] < targetValue[b] ? b : a)
-                    .orElse(-1);
-            if (predicted == actual) {
+        for (int i = 0; i < predicted.length; ++i) {
+            if (predicted[i] == getResult(testData.get(i).getTargetValue())) {
                 totalCorrect++;
             }
         }
@@ -43,19 +45,68 @@ public class Validator {
      * @param testData      given set of test data
      * @return - Computed measures
      */
-    public static Statistics getStatistics(final NeuralNetwork neuralNetwork, final List<TrainingExample> testData) {
+    public static Statistics getStatistics(final Classifier neuralNetwork, final List<TrainingExample> testData) {
+        final int[] predicted = neuralNetwork.classifyBatch(features(testData));
         final Statistics statistics = new Statistics();
-        for (TrainingExample trainingExample : testData) {
-            final double[] targetValue = trainingExample.getTargetValue();
-            final int predicted = neuralNetwork.classify(trainingExample.getFeatures());
-            final int actual = getResult(targetValue);
-            statistics.addResult(predicted, actual);
+        for (int i = 0; i < predicted.length; ++i) {
+            final int actual = getResult(testData.get(i).getTargetValue());
+            statistics.addResult(predicted[i], actual);
         }
         return statistics;
     }
 
 
-    public static int validateMax(final NeuralNetwork neuralNetwork, final List<TrainingExample> list) {
+    /**
+     * Compute the statistics of an ANN over a compact dataset
+     * <p>
+     * Samples are decoded in chunks into reused buffers and classified batch by batch
+     *
+     * @param neuralNetwork given neuralNetwork
+     * @param testData      given set of test data
+     * @return - Computed measures
+     */
+    public static Statistics getStatistics(final Classifier neuralNetwork, final Dataset testData) {
+        final Statistics statistics = new Statistics();
+        final double[][] features = new double[Math.min(CHUNK, testData.size())][testData.getFeatureCount()];
+        for (int from = 0; from < testData.size(); from += CHUNK) {
+            final int count = Math.min(testData.size(), from + CHUNK) - from;
+            final double[][] chunk = count == features.length ? features : Arrays.copyOf(features, count);
+            for (int i = 0; i < count; ++i) {
+                testData.getFeatures(from + i, chunk[i]);
+            }
+            final int[] predicted = neuralNetwork.classifyBatch(chunk);
+            for (int i = 0; i < count; ++i) {
+                statistics.addResult(predicted[i], testData.getLabel(from + i));
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Compute the number of correctly classified instances
+     * of an ANN over a compact dataset
+     *
+     * @param neuralNetwork given neuralNetwork
+     * @param testData      given set of test data
+     * @return - Computed number of correct items
+     */
+    public static int validateClassification(final Classifier neuralNetwork, final Dataset testData) {
+        return getStatistics(neuralNetwork, testData).getCorrectAnswers();
+    }
+
+    /**
+     * @return references to the features of every sample, nothing is copied
+     */
+    private static double[][] features(final List<TrainingExample> data) {
+        final double[][] features = new double[data.size()][];
+        for (int i = 0; i < features.length; ++i) {
+            features[i] = data.get(i).getFeatures();
+        }
+        return features;
+    }
+
+
+    public static int validateMax(final Classifier neuralNetwork, final List<TrainingExample> list) {
         int ok = 0;
         for (TrainingExample trainingExample : list) {
             double[] outputs = neuralNetwork.feedForward(trainingExample.getFeatures());
@@ -21,15 +21,19 @@ import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.ubbcluj.cs.io.CheckpointWriter;
+import ro.ubbcluj.cs.io.Dataset;
 import ro.ubbcluj.cs.io.DigitImageLoadingService;
-import ro.ubbcluj.cs.io.TrainingExample;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Collections;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
 
 import static java.util.stream.Collectors.toList;
 
@@ -58,30 +62,18 @@ public class Dl4jApp {
     private static final double L2_COEFFICIENT = 0.0005;
     private static final double TRAINING_PERCENT = 0.85;
     private static final boolean UNSUPERVISED_PRE_TRAIN = true;
+    private static final int RETAINED_CHECKPOINTS = 3;
     private static Logger log = LoggerFactory.getLogger(Dl4jApp.class);
 
     public static void main(final String[] args) throws Exception {
-        final List<TrainingExample> trainData = new DigitImageLoadingService(TRAINING_LABELS, TRAIN_FEATURES, 1).loadDigitImages();
-        final List<TrainingExample> testData = new DigitImageLoadingService(TESTING_LABELS, TESTING_FEATURES, 1).loadDigitImages();
+        final Dataset trainData = new DigitImageLoadingService(TRAINING_LABELS, TRAIN_FEATURES, 1).loadDataset();
+        final Dataset testData = new DigitImageLoadingService(TESTING_LABELS, TESTING_FEATURES, 1).loadDataset();
 
-        Collections.shuffle(trainData);
+        trainData.shuffle(new Random());
 
-        final List<DataSet> training = trainData
-                .subList(0, (int) (TRAINING_PERCENT * trainData.size()))
-                .stream()
-                .map(TrainingExample::getDataSet)
-                .collect(toList());
-
-        final List<DataSet> validation = trainData
-                .subList((int) (TRAINING_PERCENT * trainData.size()), trainData.size())
-                .stream()
-                .map(TrainingExample::getDataSet)
-                .collect(toList());
-
-        final List<DataSet> testing = testData
-                .stream()
-                .map(TrainingExample::getDataSet)
-                .collect(toList());
+        final List<DataSet> training = toDataSets(trainData.subset(0, (int) (TRAINING_PERCENT * trainData.size())));
+        final List<DataSet> validation = toDataSets(trainData.subset((int) (TRAINING_PERCENT * trainData.size()), trainData.size()));
+        final List<DataSet> testing = toDataSets(testData);
 
 
         log.info(String.format("IMAGE DATA LOADED: %d training, %d validation, %d test", training.size(), validation.size(), testData.size()));
@@ -154,6 +146,8 @@ public class Dl4jApp {
 
         log.info("Train model....");
 
+        final CheckpointWriter<MultiLayerNetwork> checkpoints =
+                new CheckpointWriter<>(Paths.get("checkpoints"), "nn", ".zip", RETAINED_CHECKPOINTS, Dl4jApp::saveANN);
         double best = Double.MIN_VALUE;
         for (int iteration = 1; iteration <= ITERATIONS; ++iteration) {
             model.fit(trainIterator);
@@ -165,18 +159,19 @@ public class Dl4jApp {
                 log.info("New best model:");
                 log.info(eval.stats());
                 log.info("\n" + eval.confusionToString());
-                saveANN(model);
-                log.info("Model saved");
+                checkpoints.submit(model.clone());//written in the background while training goes on
+                log.info("Model snapshot taken");
             }
 
         }
+        checkpoints.close();
 
 
         log.info("****************Training finished********************");
 
         log.info("****************Testing best model********************");
 
-        final MultiLayerNetwork bestModel = loadANN();
+        final MultiLayerNetwork bestModel = loadANN(checkpoints.latest());
 
         final Evaluation eval = evaluateANN(bestModel, testIterator);
 
@@ -184,15 +179,21 @@ public class Dl4jApp {
         log.info("\n" + eval.confusionToString());
     }
 
-    private static void saveANN(final MultiLayerNetwork model) throws IOException {
-        try (FileOutputStream fileOutputStream = new FileOutputStream(new File("nn.txt"))) {
-            ModelSerializer.writeModel(model, fileOutputStream, true);
+    private static List<DataSet> toDataSets(final Dataset dataset) {
+        return IntStream.range(0, dataset.size())
+                .mapToObj(i -> dataset.getTrainingExample(i).getDataSet())
+                .collect(toList());
+    }
+
+    private static void saveANN(final MultiLayerNetwork model, final Path file) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(file)) {
+            ModelSerializer.writeModel(model, outputStream, true);
         }
     }
 
-    private static MultiLayerNetwork loadANN() throws IOException {
-        try (FileInputStream fis = new FileInputStream(new File("nn.txt"))) {
-            return ModelSerializer.restoreMultiLayerNetwork(fis);
+    private static MultiLayerNetwork loadANN(final Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return ModelSerializer.restoreMultiLayerNetwork(inputStream);
         }
     }
 
@@ -0,0 +1,241 @@
+package ro.ubbcluj.cs.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.TreeMap;
+
+/**
+ * Writes model snapshots on a background thread
+ * <p>
+ * submit only hands the snapshot over and returns, the caller never waits for the disk.
+ * When snapshots arrive faster than they can be written, the pending one is replaced by the newer one,
+ * so at most one snapshot waits in memory. Every checkpoint is written to a temporary file, synced to the disk
+ * and renamed, readers never see a partial file, and only the last retained checkpoints are kept on disk.
+ * The numbering continues after the checkpoints already in the directory, which count towards the retained ones.
+ *
+ * @param <T> type of the snapshots, which must not be modified after being submitted
+ */
+public class CheckpointWriter<T> implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(CheckpointWriter.class);
+
+    /**
+     * Serializes a snapshot into the given file
+     */
+    public interface Serializer<T> {
+        void write(T snapshot, Path file) throws IOException;
+    }
+
+    private final Path directory;
+    private final String prefix;
+    private final String suffix;
+    private final int retained;
+    private final Serializer<T> serializer;
+
+    private final Object lock = new Object();
+    private final Thread writer;
+
+    /**
+     * Guarded by lock
+     */
+    private T pending;
+    private boolean closed;
+    private boolean writing;
+
+    /**
+     * Owned by the writer thread
+     */
+    private final Deque<Path> written = new ArrayDeque<>();
+    private long sequence;
+
+    private volatile Path latest;
+    private volatile IOException failure;
+
+    /**
+     * @param directory  where the checkpoints are written, created if missing
+     * @param prefix     file name prefix, files are named prefix-sequence suffix
+     * @param suffix     file name suffix, e.g. ".bin"
+     * @param retained   number of most recent checkpoints kept on disk
+     * @param serializer writes one snapshot
+     * @throws IOException if the directory can not be created or listed
+     */
+    public CheckpointWriter(final Path directory, final String prefix, final String suffix, final int retained,
+                            final Serializer<T> serializer) throws IOException {
+        if (retained < 1) {
+            throw new IllegalArgumentException("At least one checkpoint must be retained");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.retained = retained;
+        this.serializer = serializer;
+        final TreeMap<Long, Path> existing = existingCheckpoints();
+        written.addAll(existing.values());
+        sequence = existing.isEmpty() ? 0 : existing.lastKey();
+        this.writer = new Thread(this::run, "checkpoint-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Schedules the snapshot to be written, replacing any snapshot still waiting
+     *
+     * @param snapshot independent copy of the model
+     */
+    public void submit(final T snapshot) {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Checkpoint writer is closed");
+            }
+            if (pending != null) {
+                log.debug("Checkpoint skipped, superseded by a newer one");
+            }
+            pending = snapshot;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return the most recent checkpoint completely written, null if none yet
+     */
+    public Path latest() {
+        return latest;
+    }
+
+    /**
+     * Waits until the submitted snapshots are on disk
+     *
+     * @throws IOException if the last write failed
+     */
+    public void flush() throws IOException {
+        synchronized (lock) {
+            while (pending != null || writing) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the checkpoint", e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes the pending snapshot, if any, and stops the background thread
+     *
+     * @throws IOException if the last write failed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the checkpoint", e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final T snapshot;
+            synchronized (lock) {
+                while (pending == null && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending == null) {
+                    return;
+                }
+                snapshot = pending;
+                pending = null;
+                writing = true;
+            }
+            try {
+                write(snapshot);
+                failure = null;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Checkpoint could not be written", e);
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            } finally {
+                synchronized (lock) {
+                    writing = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void write(final T snapshot) throws IOException {
+        final Path file = directory.resolve(prefix + "-" + (++sequence) + suffix);
+        final Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try {
+            serializer.write(snapshot, temporary);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);//the rename must not reach the disk before the content
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+        latest = file;
+        log.debug("Checkpoint written: " + file);
+
+        written.addLast(file);
+        while (written.size() > retained) {
+            Files.deleteIfExists(written.removeFirst());
+        }
+    }
+
+    /**
+     * @return the checkpoints of this prefix and suffix already in the directory, by sequence number
+     */
+    private TreeMap<Long, Path> existingCheckpoints() throws IOException {
+        final TreeMap<Long, Path> existing = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                if (name.length() <= prefix.length() + 1 + suffix.length()
+                        || !name.startsWith(prefix + "-") || !name.endsWith(suffix)) {
+                    continue;
+                }
+                final String number = name.substring(prefix.length() + 1, name.length() - suffix.length());
+                if (number.chars().allMatch(Character::isDigit) && number.length() < 19) {
+                    existing.put(Long.parseLong(number), file);
+                }
+            }
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,194 @@
+package ro.ubbcluj.cs.io;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compact columnar storage for labelled images
+ * <p>
+ * All pixels are kept as unsigned bytes in a single block and the labels in another one,
+ * about 8 times less memory than a list of TrainingExample. Samples are addressed through
+ * an index permutation, so shuffling and splitting never move nor copy pixels.
+ * <p>
+ * Views created by subset share the storage and the permutation of their parent:
+ * shuffling a view shuffles that range of the parent.
+ */
+public class Dataset {
+
+    private final byte[] pixels;
+    private final byte[] labels;
+    private final int featureCount;
+    private final int classes;
+    private final double classMark;
+
+    /**
+     * order[from + i] is the storage index of the i-th sample of this view
+     */
+    private final int[] order;
+    private final int from;
+    private final int to;
+
+    public Dataset(final byte[] pixels, final byte[] labels, final int featureCount, final int classes, final double classMark) {
+        if ((long) labels.length * featureCount != pixels.length) {
+            throw new IllegalArgumentException("Expected " + featureCount + " pixels for each of the " + labels.length + " labels");
+        }
+        this.pixels = pixels;
+        this.labels = labels;
+        this.featureCount = featureCount;
+        this.classes = classes;
+        this.classMark = classMark;
+        this.order = new int[labels.length];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        this.from = 0;
+        this.to = labels.length;
+    }
+
+    private Dataset(final Dataset parent, final int from, final int to) {
+        this.pixels = parent.pixels;
+        this.labels = parent.labels;
+        this.featureCount = parent.featureCount;
+        this.classes = parent.classes;
+        this.classMark = parent.classMark;
+        this.order = parent.order;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Copies the raw bytes of the given images into a dataset
+     *
+     * @param images    source samples
+     * @param classMark target value of the expected class
+     * @param classes   number of classes
+     * @return new dataset
+     */
+    public static Dataset copyOf(final MappedDigitImages images, final double classMark, final int classes) {
+        return copyOf(images, 0, images.size(), classMark, classes);
+    }
+
+    /**
+     * Copies the raw bytes of the images [from, to) into a dataset
+     */
+    public static Dataset copyOf(final MappedDigitImages images, final int from, final int to, final double classMark, final int classes) {
+        if (from < 0 || to > images.size() || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + images.size());
+        }
+        final int imageSize = images.getImageSize();
+        final byte[] pixels = new byte[Math.multiplyExact(to - from, imageSize)];
+        final byte[] labels = new byte[to - from];
+        for (int i = from; i < to; ++i) {
+            images.getPixels(i, pixels, (i - from) * imageSize);
+            labels[i - from] = (byte) images.getLabel(i);
+        }
+        return new Dataset(pixels, labels, imageSize, classes, classMark);
+    }
+
+    public int size() {
+        return to - from;
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    public double getClassMark() {
+        return classMark;
+    }
+
+    public int getLabel(final int sample) {
+        return labels[index(sample)];
+    }
+
+    /**
+     * Shared pixel block, read-only by convention
+     * <p>
+     * The pixels of a sample are getPixels()[getPixelOffset(sample) .. getPixelOffset(sample) + getFeatureCount())
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return start of the sample's row inside getPixels()
+     */
+    public int getPixelOffset(final int sample) {
+        return index(sample) * featureCount;
+    }
+
+    /**
+     * Decodes a sample with min-max normalization into the given buffer
+     */
+    public void getFeatures(final int sample, final double[] features) {
+        final int offset = getPixelOffset(sample);
+        for (int j = 0; j < featureCount; ++j) {
+            features[j] = (pixels[offset + j] & 0xFF) / 255.0;//min-max normalization
+        }
+    }
+
+    /**
+     * Writes the one-hot target of a sample into the given buffer
+     */
+    public void getTarget(final int sample, final double[] target) {
+        Arrays.fill(target, 0, classes, 0);
+        target[getLabel(sample)] = classMark;
+    }
+
+    /**
+     * Decodes the samples [from, to) of this view into the given mini-batch
+     */
+    public void fill(final MiniBatch batch, final int from, final int to) {
+        batch.setSize(to - from);
+        final double[][] features = batch.getFeatures();
+        final double[][] targets = batch.getTargets();
+        for (int i = from; i < to; ++i) {
+            getFeatures(i, features[i - from]);
+            getTarget(i, targets[i - from]);
+        }
+    }
+
+    /**
+     * Decodes a sample into a new, independent training example
+     */
+    public TrainingExample getTrainingExample(final int sample) {
+        final double[] features = new double[featureCount];
+        final double[] target = new double[classes];
+        getFeatures(sample, features);
+        getTarget(sample, target);
+        return TrainingExample.wrap(features, target);
+    }
+
+    /**
+     * Permutes the samples of this view in place (Fisher-Yates), no pixel is moved
+     */
+    public void shuffle(final Random random) {
+        for (int i = to - 1; i > from; --i) {
+            final int j = from + random.nextInt(i - from + 1);
+            final int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+    }
+
+    /**
+     * @return view over the samples [from, to) of this view, sharing the storage
+     */
+    public Dataset subset(final int from, final int to) {
+        if (from < 0 || to > size() || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + size());
+        }
+        return new Dataset(this, this.from + from, this.from + to);
+    }
+
+    private int index(final int sample) {
+        if (sample < 0 || sample >= size()) {
+            throw new IndexOutOfBoundsException("Sample " + sample + " of " + size());
+        }
+        return order[from + sample];
+    }
+}
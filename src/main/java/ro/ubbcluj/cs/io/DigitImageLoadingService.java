@@ -6,7 +6,11 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -20,23 +24,9 @@ public class DigitImageLoadingService {
     /**
      * the following constants are defined as per the values described at http://yann.lecun.com/exdb/mnist/
      **/
-    private static final int OFFSET_SIZE = 4; //bytes
-
-    private static final int LABEL_MAGIC = 2049;
-    private static final int IMAGE_MAGIC = 2051;
-
-    private static final int NUMBER_ITEMS_OFFSET = 4;
-    private static final int ITEMS_SIZE = 4;
-
-    private static final int NUMBER_OF_ROWS_OFFSET = 8;
-    private static final int ROWS_SIZE = 4;
     private static final int ROWS = 28;
-
-    private static final int NUMBER_OF_COLUMNS_OFFSET = 12;
-    private static final int COLUMNS_SIZE = 4;
     private static final int COLUMNS = 28;
 
-    private static final int IMAGE_OFFSET = 16;
     private static final int IMAGE_SIZE = ROWS * COLUMNS;
     private static final int CLASSES = 10;
     private final double notClassMark;
@@ -54,84 +44,180 @@ public class DigitImageLoadingService {
     }
 
 
-    public List<TrainingExample> loadDigitImages() throws IOException {
-        final ByteArrayOutputStream labelBuffer = new ByteArrayOutputStream();
-        final ByteArrayOutputStream imageBuffer = new ByteArrayOutputStream();
-
-        final InputStream labelInputStream = this.getClass().getResourceAsStream(labelFileName);
-        final InputStream imageInputStream = this.getClass().getResourceAsStream(imageFileName);
-
-        int read;
-        final byte[] buffer = new byte[16000];
-
-        while ((read = labelInputStream.read(buffer, 0, buffer.length)) != -1) {
-            labelBuffer.write(buffer, 0, read);
+    /**
+     * Memory-maps the label and image files instead of reading them into the heap
+     * <p>
+     * The file names are looked up on the classpath first and then on the file system.
+     *
+     * @return zero-copy view over the samples
+     * @throws IOException if a file is missing, packed in an archive or invalid
+     */
+    public MappedDigitImages mapDigitImages() throws IOException {
+        final MappedDigitImages images = MappedDigitImages.map(resolve(labelFileName), resolve(imageFileName));
+        if (images.getRows() != ROWS || images.getColumns() != COLUMNS) {
+            throw new IOException("Bad image. Rows and columns do not equal " + ROWS + "x" + COLUMNS);
         }
+        log.debug("Mapped: " + images.size() + " samples");
+        return images;
+    }
 
-        while ((read = imageInputStream.read(buffer, 0, buffer.length)) != -1) {
-            imageBuffer.write(buffer, 0, read);
+    /**
+     * @return the resource as a file on disk, or null if it is not available as one
+     */
+    private Path findFile(final String fileName) {
+        final URL resource = this.getClass().getResource(fileName);
+        if (resource != null) {
+            if (!"file".equals(resource.getProtocol())) {
+                return null;
+            }
+            try {
+                return Paths.get(resource.toURI());
+            } catch (URISyntaxException e) {
+                return null;
+            }
         }
+        final Path path = Paths.get(fileName);
+        return Files.isRegularFile(path) ? path : null;
+    }
 
-        final byte[] labelBytes = labelBuffer.toByteArray();
-        final byte[] imageBytes = imageBuffer.toByteArray();
+    private Path resolve(final String fileName) throws IOException {
+        final Path path = findFile(fileName);
+        if (path == null) {
+            throw new IOException(fileName + " is not a file on disk and can not be memory-mapped");
+        }
+        return path;
+    }
 
+    /**
+     * Decodes every sample up front into its own feature and target arrays
+     * <p>
+     * This takes about 400 MB of heap for the 60k training images. Use loadDataset for the compact
+     * byte representation, or mapDigitImages (and its asTrainingExamples view) to keep the samples off the heap.
+     *
+     * @return modifiable list of the decoded samples
+     * @throws IOException if a file is missing or invalid
+     */
+    public List<TrainingExample> loadDigitImages() throws IOException {
+        return decode(openDigitImages());
+    }
 
-        final byte[] labelMagic = Arrays.copyOfRange(labelBytes, 0, OFFSET_SIZE);
-        final byte[] imageMagic = Arrays.copyOfRange(imageBytes, 0, OFFSET_SIZE);
+    /**
+     * Loads the samples in the compact byte representation
+     *
+     * @return dataset holding the raw pixels and labels
+     * @throws IOException if a file is missing or invalid
+     */
+    public Dataset loadDataset() throws IOException {
+        final Dataset dataset = Dataset.copyOf(openDigitImages(), classMark, CLASSES);
+        log.debug("Loaded: " + dataset.size() + " samples");
+        return dataset;
+    }
 
-        if (ByteBuffer.wrap(labelMagic).getInt() != LABEL_MAGIC) {
-            throw new IOException("Bad magic number in label file!");
+    /**
+     * Loads only the last samples, e.g. a validation set kept out of a streamed training set
+     * <p>
+     * Files on disk are memory-mapped, so the samples before the tail never reach the heap.
+     *
+     * @param from first sample loaded, as a fraction of the number of samples: (int) (from * size)
+     * @return dataset holding the raw pixels and labels of the tail
+     * @throws IOException if a file is missing or invalid
+     */
+    public Dataset loadTail(final double from) throws IOException {
+        if (from < 0 || from > 1) {
+            throw new IllegalArgumentException("The tail must start between 0 and 1");
         }
+        final MappedDigitImages images = openDigitImages();
+        final Dataset dataset = Dataset.copyOf(images, (int) (from * images.size()), images.size(), classMark, CLASSES);
+        log.debug("Loaded: " + dataset.size() + " of " + images.size() + " samples");
+        return dataset;
+    }
 
-        if (ByteBuffer.wrap(imageMagic).getInt() != IMAGE_MAGIC) {
-            throw new IOException("Bad magic number in image file!");
+    /**
+     * Streams the samples in mini-batches decoded on a background thread, without loading the files
+     *
+     * @param batchSize maximum number of samples of a batch
+     * @param prefetch  number of batches decoded ahead of the consumer
+     * @return source to be closed by the caller
+     * @throws IOException if a file is missing or invalid
+     */
+    public StreamingBatchSource streamBatches(final int batchSize, final int prefetch) throws IOException {
+        final InputStream labelStream = openStream(labelFileName);
+        try {
+            final StreamingBatchSource source = new StreamingBatchSource(labelStream, openStream(imageFileName), batchSize, prefetch, CLASSES, classMark);
+            if (source.getRows() != ROWS || source.getColumns() != COLUMNS) {
+                source.close();
+                throw new IOException("Bad image. Rows and columns do not equal " + ROWS + "x" + COLUMNS);
+            }
+            return source;
+        } catch (IOException | RuntimeException e) {
+            labelStream.close();
+            throw e;
         }
+    }
 
-        final int numberOfLabels = ByteBuffer.wrap(Arrays.copyOfRange(labelBytes, NUMBER_ITEMS_OFFSET, NUMBER_ITEMS_OFFSET + ITEMS_SIZE)).getInt();
-        final int numberOfImages = ByteBuffer.wrap(Arrays.copyOfRange(imageBytes, NUMBER_ITEMS_OFFSET, NUMBER_ITEMS_OFFSET + ITEMS_SIZE)).getInt();
-
-
-        log.debug("Number of samples to be read: " + numberOfImages);
-
-        if (numberOfImages != numberOfLabels) {
-            throw new IOException("The number of labels and images do not match!");
+    private InputStream openStream(final String fileName) throws IOException {
+        final Path path = findFile(fileName);
+        if (path != null) {
+            return Files.newInputStream(path);
         }
+        final InputStream inputStream = this.getClass().getResourceAsStream(fileName);
+        if (inputStream == null) {
+            throw new IOException("Missing resource " + fileName);
+        }
+        return inputStream;
+    }
 
+    /**
+     * Maps the files when they are on disk, otherwise reads the resources into memory
+     */
+    private MappedDigitImages openDigitImages() throws IOException {
+        if (findFile(labelFileName) != null && findFile(imageFileName) != null) {
+            return mapDigitImages();
+        }
 
-        final int numRows = ByteBuffer.wrap(Arrays.copyOfRange(imageBytes, NUMBER_OF_ROWS_OFFSET, NUMBER_OF_ROWS_OFFSET + ROWS_SIZE)).getInt();
-        final int numCols = ByteBuffer.wrap(Arrays.copyOfRange(imageBytes, NUMBER_OF_COLUMNS_OFFSET, NUMBER_OF_COLUMNS_OFFSET + COLUMNS_SIZE)).getInt();
-
-
-        if (numRows != ROWS && numCols != COLUMNS) {
+        final MappedDigitImages images = MappedDigitImages.wrap(readResource(labelFileName), readResource(imageFileName));
+        if (images.getRows() != ROWS || images.getColumns() != COLUMNS) {
             throw new IOException("Bad image. Rows and columns do not equal " + ROWS + "x" + COLUMNS);
         }
+        log.debug("Sample dimension: " + images.getRows() + "x" + images.getColumns());
+        return images;
+    }
 
-        log.debug("Sample dimension: " + numRows + "x" + numCols);
-
-        final List<TrainingExample> trainingExamples = new ArrayList<>();
-
-        for (int i = 0; i < numberOfLabels; i++) {
-            final int label = labelBytes[OFFSET_SIZE + ITEMS_SIZE + i];
-
-            final double[] features = new double[IMAGE_SIZE];
-            for (int j = (i * IMAGE_SIZE) + IMAGE_OFFSET; j < (i * IMAGE_SIZE) + IMAGE_OFFSET + IMAGE_SIZE; ++j) {
-                final int unsignedByte = ((int) imageBytes[j]) & 0xFF;
-                final double e = (unsignedByte) / (255.0);//min-max normalization
-                features[j - (i * IMAGE_SIZE) - IMAGE_OFFSET] = e;
+    private byte[] readResource(final String fileName) throws IOException {
+        try (InputStream inputStream = this.getClass().getResourceAsStream(fileName)) {
+            if (inputStream == null) {
+                throw new IOException("Missing resource " + fileName);
             }
-
-            double[] target = new double[CLASSES];
-            for (int j = 0; j < CLASSES; ++j) {
-                target[j] = notClassMark;
+            final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            int read;
+            final byte[] chunk = new byte[16000];
+            while ((read = inputStream.read(chunk, 0, chunk.length)) != -1) {
+                buffer.write(chunk, 0, read);
             }
-            target[label] = classMark;
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Decodes every mapped sample straight from the mapping, without intermediate copies of the files
+     */
+    private List<TrainingExample> decode(final MappedDigitImages images) {
+        log.debug("Number of samples to be read: " + images.size());
+        final List<TrainingExample> trainingExamples = new ArrayList<>(images.size());
+        for (int i = 0; i < images.size(); i++) {
+            final double[] features = new double[IMAGE_SIZE];
+            images.getFeatures(i, features);
 
-            final TrainingExample example = new TrainingExample(features, target);
+            final double[] target = new double[CLASSES];
+            Arrays.fill(target, notClassMark);
+            target[images.getLabel(i)] = classMark;
 
-            trainingExamples.add(example);
+            trainingExamples.add(TrainingExample.wrap(features, target));
         }
 
-        log.debug("Sample data: " + trainingExamples.get(0));
+        if (!trainingExamples.isEmpty()) {
+            log.debug("Sample data: " + trainingExamples.get(0));
+        }
 
         log.debug("Loaded: " + trainingExamples.size() + " samples");
 
@@ -0,0 +1,277 @@
+package ro.ubbcluj.cs.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Zero-copy view over a pair of IDX label/image files
+ * <p>
+ * Both files are memory-mapped (or wrapped, when already read), the headers are validated in place and every image is decoded
+ * only when it is requested. Nothing proportional to the number of samples lives on the heap,
+ * so the files may be far bigger than the available memory.
+ * <p>
+ * The format is described at http://yann.lecun.com/exdb/mnist/
+ */
+public class MappedDigitImages {
+
+    private static Logger log = LoggerFactory.getLogger(MappedDigitImages.class);
+
+    private static final int LABEL_MAGIC = 2049;
+    private static final int IMAGE_MAGIC = 2051;
+
+    private static final int LABEL_OFFSET = 8;
+    private static final int IMAGE_OFFSET = 16;
+
+    /**
+     * Upper bound of a single mapping, a MappedByteBuffer is indexed by int
+     */
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private final int size;
+    private final int rows;
+    private final int columns;
+    private final int imageSize;
+
+    /**
+     * Number of images held by every segment but the last one
+     */
+    private final int imagesPerSegment;
+
+    private final ByteBuffer[] labelSegments;
+    private final ByteBuffer[] imageSegments;
+
+    private MappedDigitImages(final int size, final int rows, final int columns,
+                              final ByteBuffer[] labelSegments, final ByteBuffer[] imageSegments) {
+        this.size = size;
+        this.rows = rows;
+        this.columns = columns;
+        this.imageSize = rows * columns;
+        this.imagesPerSegment = SEGMENT_SIZE / imageSize;
+        this.labelSegments = labelSegments;
+        this.imageSegments = imageSegments;
+    }
+
+    /**
+     * Maps the given IDX files, the channels are closed once mapped
+     *
+     * @param labelFile IDX1 file containing the labels
+     * @param imageFile IDX3 file containing the images
+     * @return view over the samples
+     * @throws IOException if the files can not be read or have an invalid header
+     */
+    public static MappedDigitImages map(final Path labelFile, final Path imageFile) throws IOException {
+        try (FileChannel labels = FileChannel.open(labelFile, StandardOpenOption.READ);
+             FileChannel images = FileChannel.open(imageFile, StandardOpenOption.READ)) {
+
+            final Header header = new Header(
+                    labels.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(labels.size(), LABEL_OFFSET)), labels.size(),
+                    images.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(images.size(), IMAGE_OFFSET)), images.size());
+
+            log.debug("Mapping " + header.size + " samples of " + header.rows + "x" + header.columns);
+
+            final ByteBuffer[] labelSegments = mapSegments(labels, LABEL_OFFSET, header.size, SEGMENT_SIZE, 1);
+            final int imagesPerSegment = SEGMENT_SIZE / (header.rows * header.columns);
+            final ByteBuffer[] imageSegments = mapSegments(images, IMAGE_OFFSET, header.size, imagesPerSegment, header.rows * header.columns);
+
+            return new MappedDigitImages(header.size, header.rows, header.columns, labelSegments, imageSegments);
+        }
+    }
+
+    /**
+     * Same view over files already read into memory
+     *
+     * @param labelBytes content of the IDX1 label file
+     * @param imageBytes content of the IDX3 image file
+     * @return view over the samples
+     * @throws IOException if a header is invalid
+     */
+    public static MappedDigitImages wrap(final byte[] labelBytes, final byte[] imageBytes) throws IOException {
+        final Header header = new Header(ByteBuffer.wrap(labelBytes), labelBytes.length, ByteBuffer.wrap(imageBytes), imageBytes.length);
+        final int imageSize = header.rows * header.columns;
+        final ByteBuffer[] labels = sliceSegments(labelBytes, LABEL_OFFSET, header.size, SEGMENT_SIZE, 1);
+        final ByteBuffer[] images = sliceSegments(imageBytes, IMAGE_OFFSET, header.size, SEGMENT_SIZE / imageSize, imageSize);
+        return new MappedDigitImages(header.size, header.rows, header.columns, labels, images);
+    }
+
+    /**
+     * Validated content of the label and image headers
+     */
+    private static class Header {
+        private final int size;
+        private final int rows;
+        private final int columns;
+
+        private Header(final ByteBuffer labelHeader, final long labelFileSize,
+                       final ByteBuffer imageHeader, final long imageFileSize) throws IOException {
+            if (labelHeader.limit() < LABEL_OFFSET || labelHeader.getInt(0) != LABEL_MAGIC) {
+                throw new IOException("Bad magic number in label file!");
+            }
+            if (imageHeader.limit() < IMAGE_OFFSET || imageHeader.getInt(0) != IMAGE_MAGIC) {
+                throw new IOException("Bad magic number in image file!");
+            }
+
+            final int numberOfLabels = labelHeader.getInt(4);
+            final int numberOfImages = imageHeader.getInt(4);
+            this.rows = imageHeader.getInt(8);
+            this.columns = imageHeader.getInt(12);
+            this.size = numberOfImages;
+
+            if (numberOfLabels < 0) {
+                throw new IOException("Negative number of labels " + numberOfLabels);
+            }
+            if (numberOfImages < 0) {
+                throw new IOException("Negative number of images " + numberOfImages);
+            }
+            if (numberOfImages != numberOfLabels) {
+                throw new IOException("The number of labels and images do not match!");
+            }
+            if (rows < 1 || columns < 1 || (long) rows * columns > SEGMENT_SIZE) {
+                throw new IOException("Bad image dimension " + rows + "x" + columns);
+            }
+            if (labelFileSize < LABEL_OFFSET + (long) numberOfLabels) {
+                throw new IOException("Label file is truncated");
+            }
+            if (imageFileSize < IMAGE_OFFSET + (long) numberOfImages * rows * columns) {
+                throw new IOException("Image file is truncated");
+            }
+        }
+    }
+
+    private static ByteBuffer[] mapSegments(final FileChannel channel, final long offset, final int items,
+                                            final int itemsPerSegment, final long itemSize) throws IOException {
+        final int segments = Math.max(1, (int) ((items + (long) itemsPerSegment - 1) / itemsPerSegment));
+        final ByteBuffer[] buffers = new ByteBuffer[segments];
+        for (int i = 0; i < segments; ++i) {
+            final long first = (long) i * itemsPerSegment;
+            final long count = Math.min(items - first, itemsPerSegment);
+            buffers[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * itemSize, Math.max(0, count) * itemSize);
+        }
+        return buffers;
+    }
+
+    private static ByteBuffer[] sliceSegments(final byte[] bytes, final int offset, final int items,
+                                              final int itemsPerSegment, final int itemSize) {
+        final int segments = Math.max(1, (int) ((items + (long) itemsPerSegment - 1) / itemsPerSegment));
+        final ByteBuffer[] buffers = new ByteBuffer[segments];
+        for (int i = 0; i < segments; ++i) {
+            final int first = i * itemsPerSegment;
+            final int count = Math.max(0, Math.min(items - first, itemsPerSegment));
+            buffers[i] = ByteBuffer.wrap(bytes, offset + first * itemSize, count * itemSize).slice();
+        }
+        return buffers;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return number of pixels of an image
+     */
+    public int getImageSize() {
+        return imageSize;
+    }
+
+    public int getLabel(final int image) {
+        checkIndex(image);
+        return labelSegments[image / SEGMENT_SIZE].get(image % SEGMENT_SIZE) & 0xFF;
+    }
+
+    /**
+     * @return unsigned value of a pixel, 0..255
+     */
+    public int getPixel(final int image, final int pixel) {
+        checkIndex(image);
+        checkPixel(pixel);
+        final int position = (image % imagesPerSegment) * imageSize + pixel;
+        return imageSegments[image / imagesPerSegment].get(position) & 0xFF;
+    }
+
+    /**
+     * Copies the raw pixels of an image
+     *
+     * @param image  index of the image
+     * @param pixels destination, at least getImageSize() long
+     */
+    public void getPixels(final int image, final byte[] pixels) {
+        getPixels(image, pixels, 0);
+    }
+
+    /**
+     * Copies the raw pixels of an image at the given offset
+     */
+    public void getPixels(final int image, final byte[] pixels, final int offset) {
+        checkIndex(image);
+        final ByteBuffer segment = imageSegments[image / imagesPerSegment].duplicate();
+        segment.position((image % imagesPerSegment) * imageSize);
+        segment.get(pixels, offset, imageSize);
+    }
+
+    /**
+     * Decodes an image with min-max normalization into the given buffer
+     *
+     * @param image    index of the image
+     * @param features destination, at least getImageSize() long
+     */
+    public void getFeatures(final int image, final double[] features) {
+        checkIndex(image);
+        final ByteBuffer segment = imageSegments[image / imagesPerSegment];
+        final int start = (image % imagesPerSegment) * imageSize;
+        for (int j = 0; j < imageSize; ++j) {
+            features[j] = (segment.get(start + j) & 0xFF) / 255.0;//min-max normalization
+        }
+    }
+
+    /**
+     * Exposes the samples as training examples decoded on every access
+     *
+     * @param classMark   target value of the expected class
+     * @param classes     number of classes
+     * @return read-only list view, nothing is decoded up front
+     */
+    public List<TrainingExample> asTrainingExamples(final double classMark, final int classes) {
+        return new AbstractList<TrainingExample>() {
+            @Override
+            public TrainingExample get(final int index) {
+                final double[] features = new double[imageSize];
+                getFeatures(index, features);
+                final double[] target = new double[classes];
+                target[getLabel(index)] = classMark;
+                return TrainingExample.wrap(features, target);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private void checkIndex(final int image) {
+        if (image < 0 || image >= size) {
+            throw new IndexOutOfBoundsException("Image " + image + " of " + size);
+        }
+    }
+
+    private void checkPixel(final int pixel) {
+        if (pixel < 0 || pixel >= imageSize) {
+            throw new IndexOutOfBoundsException("Pixel " + pixel + " of " + imageSize);
+        }
+    }
+}
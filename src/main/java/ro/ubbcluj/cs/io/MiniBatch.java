@@ -0,0 +1,47 @@
+package ro.ubbcluj.cs.io;
+
+/**
+ * Reusable buffers holding the decoded features and targets of a mini-batch
+ * <p>
+ * The rows are allocated once and overwritten every time the batch is refilled.
+ */
+public class MiniBatch {
+
+    private final double[][] features;
+    private final double[][] targets;
+    private int size;
+
+    public MiniBatch(final int capacity, final int featureCount, final int classes) {
+        this.features = new double[capacity][featureCount];
+        this.targets = new double[capacity][classes];
+    }
+
+    /**
+     * @return feature rows, only the first size() are valid
+     */
+    public double[][] getFeatures() {
+        return features;
+    }
+
+    /**
+     * @return target rows, only the first size() are valid
+     */
+    public double[][] getTargets() {
+        return targets;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return features.length;
+    }
+
+    public void setSize(final int size) {
+        if (size < 0 || size > features.length) {
+            throw new IllegalArgumentException("Invalid batch size " + size + ", capacity is " + features.length);
+        }
+        this.size = size;
+    }
+}
@@ -0,0 +1,265 @@
+package ro.ubbcluj.cs.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams mini-batches out of a pair of IDX label/image streams (plain or gzipped)
+ * <p>
+ * A background thread reads the records incrementally, normalizes them and fills a bounded ring
+ * of reusable MiniBatch buffers, so reading and decoding overlap with training and only
+ * prefetch batches are ever held in memory, whatever the size of the files.
+ * <p>
+ * Usage:
+ * <pre>
+ * MiniBatch batch;
+ * while ((batch = source.next()) != null) {
+ *     neuralNetwork.sgd(batch);
+ *     source.release(batch);
+ * }
+ * </pre>
+ * The source is meant to be consumed by a single thread.
+ */
+public class StreamingBatchSource implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(StreamingBatchSource.class);
+
+    private static final int LABEL_MAGIC = 2049;
+    private static final int IMAGE_MAGIC = 2051;
+
+    private static final int GZIP_MAGIC = 0x1f8b;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Marks the end of the stream in the ready queue
+     */
+    private static final MiniBatch END = new MiniBatch(0, 0, 0);
+
+    private final DataInputStream labels;
+    private final DataInputStream images;
+    private final int size;
+    private final int rows;
+    private final int columns;
+    private final int classes;
+    private final double classMark;
+
+    private final BlockingQueue<MiniBatch> free;
+    private final BlockingQueue<MiniBatch> ready;
+    private final Thread reader;
+
+    private volatile IOException failure;
+    private boolean finished;
+
+    /**
+     * Opens the given files, gzipped files are recognized by their magic number
+     *
+     * @see #StreamingBatchSource(InputStream, InputStream, int, int, int, double)
+     */
+    public static StreamingBatchSource open(final Path labelFile, final Path imageFile, final int batchSize, final int prefetch,
+                                            final int classes, final double classMark) throws IOException {
+        final InputStream labelStream = Files.newInputStream(labelFile);
+        try {
+            return new StreamingBatchSource(labelStream, Files.newInputStream(imageFile), batchSize, prefetch, classes, classMark);
+        } catch (IOException | RuntimeException e) {
+            labelStream.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Validates the headers and starts reading in the background
+     * <p>
+     * The source takes ownership of the streams and closes them.
+     *
+     * @param labelStream IDX label stream, optionally gzipped
+     * @param imageStream IDX image stream, optionally gzipped
+     * @param batchSize   maximum number of samples of a batch
+     * @param prefetch    number of batches decoded ahead of the consumer
+     * @param classes     number of classes
+     * @param classMark   target value of the expected class
+     * @throws IOException if a header is invalid or the streams disagree
+     */
+    public StreamingBatchSource(final InputStream labelStream, final InputStream imageStream, final int batchSize, final int prefetch,
+                                final int classes, final double classMark) throws IOException {
+        try {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be positive");
+            }
+            if (prefetch < 1) {
+                throw new IllegalArgumentException("At least one batch must be prefetched");
+            }
+            this.labels = new DataInputStream(decompress(labelStream));
+            this.images = new DataInputStream(decompress(imageStream));
+
+            if (labels.readInt() != LABEL_MAGIC) {
+                throw new IOException("Bad magic number in label file!");
+            }
+            if (images.readInt() != IMAGE_MAGIC) {
+                throw new IOException("Bad magic number in image file!");
+            }
+            final int numberOfLabels = labels.readInt();
+            this.size = images.readInt();
+            this.rows = images.readInt();
+            this.columns = images.readInt();
+            if (size != numberOfLabels) {
+                throw new IOException("The number of labels and images do not match!");
+            }
+            if (rows < 1 || columns < 1 || (long) rows * columns > Integer.MAX_VALUE) {
+                throw new IOException("Bad image dimension " + rows + "x" + columns);
+            }
+        } catch (IOException | RuntimeException e) {
+            labelStream.close();
+            imageStream.close();
+            throw e;
+        }
+        this.classes = classes;
+        this.classMark = classMark;
+
+        //one extra buffer for the batch held by the consumer, one extra slot for the end marker
+        this.free = new ArrayBlockingQueue<>(prefetch + 1);
+        this.ready = new ArrayBlockingQueue<>(prefetch + 2);
+        for (int i = 0; i <= prefetch; ++i) {
+            free.add(new MiniBatch(batchSize, rows * columns, classes));
+        }
+
+        this.reader = new Thread(this::read, "idx-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Number of samples announced by the headers
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Waits for the next decoded batch
+     * <p>
+     * The batch must be handed back with release once it is no longer used.
+     *
+     * @return next batch or null when the stream is exhausted
+     * @throws IOException if reading failed, e.g. the stream is truncated
+     */
+    public MiniBatch next() throws IOException {
+        if (finished) {
+            return null;
+        }
+        final MiniBatch batch;
+        try {
+            batch = ready.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a batch", e);
+        }
+        if (batch == END) {
+            finished = true;
+            if (failure != null) {
+                throw failure;
+            }
+            return null;
+        }
+        return batch;
+    }
+
+    /**
+     * Hands a batch returned by next back to the reader, to be refilled
+     */
+    public void release(final MiniBatch batch) {
+        if (!free.offer(batch)) {
+            throw new IllegalStateException("Batch released twice or not owned by this source");
+        }
+    }
+
+    /**
+     * Stops the reader and closes the streams
+     */
+    @Override
+    public void close() throws IOException {
+        reader.interrupt();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finished = true;
+        try {
+            labels.close();
+        } finally {
+            images.close();
+        }
+    }
+
+    private void read() {
+        final int imageSize = rows * columns;
+        final byte[] pixels = new byte[imageSize];
+        try {
+            int remaining = size;
+            while (remaining > 0) {
+                final MiniBatch batch = free.take();
+                final int count = Math.min(remaining, batch.capacity());
+                final double[][] features = batch.getFeatures();
+                final double[][] targets = batch.getTargets();
+                for (int i = 0; i < count; ++i) {
+                    final int label = labels.readUnsignedByte();
+                    if (label >= classes) {
+                        throw new IOException("Label " + label + " out of range, " + classes + " classes expected");
+                    }
+                    images.readFully(pixels);
+                    for (int j = 0; j < imageSize; ++j) {
+                        features[i][j] = (pixels[j] & 0xFF) / 255.0;//min-max normalization
+                    }
+                    for (int j = 0; j < classes; ++j) {
+                        targets[i][j] = 0;
+                    }
+                    targets[i][label] = classMark;
+                }
+                batch.setSize(count);
+                remaining -= count;
+                ready.put(batch);
+            }
+            log.debug("Streamed: " + size + " samples");
+        } catch (InterruptedException e) {
+            //closed by the consumer
+            return;
+        } catch (EOFException e) {
+            failure = new IOException("IDX stream is truncated", e);
+        } catch (IOException e) {
+            failure = e;
+        }
+        //there is always room for the marker, see the queue capacities
+        ready.offer(END);
+    }
+
+    /**
+     * Buffers the stream and unwraps it when it starts with the gzip magic number
+     */
+    private static InputStream decompress(final InputStream stream) throws IOException {
+        final BufferedInputStream buffered = new BufferedInputStream(stream, BUFFER_SIZE);
+        buffered.mark(2);
+        final int magic = (buffered.read() << 8) | buffered.read();
+        buffered.reset();
+        return magic == GZIP_MAGIC ? new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE) : buffered;
+    }
+}
@@ -17,6 +17,19 @@ public class TrainingExample {
         this.targetValue = Arrays.copyOf(targetValue, targetValue.length);
     }
 
+    private TrainingExample() {
+    }
+
+    /**
+     * Wraps freshly decoded arrays without copying them, the caller must not keep references
+     */
+    static TrainingExample wrap(final double[] features, final double[] targetValue) {
+        final TrainingExample example = new TrainingExample();
+        example.features = features;
+        example.targetValue = targetValue;
+        return example;
+    }
+
     public double[] getFeatures() {
         return features;
     }
@@ -47,13 +60,27 @@ public class TrainingExample {
         return pair;
     }
 
+    /**
+     * Convert training sample to libsvm nodes
+     *
+     * @return one node per non-zero feature, by increasing index; the zero features are implied
+     */
     public svm_node[] getSvmNodes() {
-        final svm_node[] nodes = new svm_node[features.length];
+        int count = 0;
+        for (double feature : features) {
+            if (feature != 0) {
+                ++count;
+            }
+        }
+        final svm_node[] nodes = new svm_node[count];
+        int k = 0;
         for (int i = 0; i < features.length; i++) {
-            final svm_node node = new svm_node();
-            node.index = i;
-            node.value = features[i];
-            nodes[i] = node;
+            if (features[i] != 0) {
+                final svm_node node = new svm_node();
+                node.index = i;
+                node.value = features[i];
+                nodes[k++] = node;
+            }
         }
         return nodes;
     }
@@ -0,0 +1,370 @@
+package ro.ubbcluj.cs.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.ubbcluj.cs.ann.impl.Classifier;
+import ro.ubbcluj.cs.ann.impl.MathUtils;
+import ro.ubbcluj.cs.ann.impl.ModelCheckpoint;
+import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Local HTTP endpoint classifying 28x28 digit images
+ * <p>
+ * POST /predict with either
+ * <ul>
+ * <li>raw images: a multiple of 784 unsigned bytes, row-major, one image after the other</li>
+ * <li>an IDX image file (magic number 2051) holding any number of 28x28 images</li>
+ * </ul>
+ * answers {"predictions":[{"class":7,"scores":[...]}, ...]}, one entry per image in request order.
+ * GET /health answers ok, GET /metrics the batching metrics, and POST /config?maxBatch=..&amp;maxDelayMicros=..&amp;adaptive=..
+ * changes the batching knobs of the running server.
+ * <p>
+ * Requests are handled on virtual threads when the JVM has them (JDK 21+), on a fixed pool otherwise.
+ * Every image is handed to a MicroBatcher, so concurrent requests share the batch inference path.
+ * Pixel and feature buffers of single-image requests are pooled and reused.
+ */
+public class InferenceServer implements Closeable {
+
+    private static Logger log = LoggerFactory.getLogger(InferenceServer.class);
+
+    static final int ROWS = 28;
+    static final int COLUMNS = 28;
+    static final int IMAGE_SIZE = ROWS * COLUMNS;
+    private static final int IMAGE_MAGIC = 2051;
+    private static final int IDX_HEADER = 16;
+
+    /**
+     * Upper bound of a request body, about 85k images
+     */
+    private static final int MAX_BODY = 64 << 20;
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_MAX_BATCH = 64;
+    private static final long DEFAULT_MAX_DELAY_MICROS = 500;
+
+    /**
+     * How long a request waits for its predictions before it is answered 503
+     */
+    private static final long RESULT_TIMEOUT_MILLIS = 10000;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final MicroBatcher batcher;
+
+    /**
+     * Reusable buffers of single-image requests
+     */
+    private final ConcurrentLinkedQueue<byte[]> pixelBuffers = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<double[]> featureBuffers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param model         trained model, with IMAGE_SIZE inputs
+     * @param address       address to listen on
+     * @param maxBatch      maximum number of images evaluated together
+     * @param maxDelayMicros how long the first image of a batch may wait for others
+     * @throws IOException if the address can not be bound
+     */
+    public InferenceServer(final Classifier model, final InetSocketAddress address, final int maxBatch,
+                           final long maxDelayMicros) throws IOException {
+        this.batcher = new MicroBatcher(model, maxBatch, maxDelayMicros, TimeUnit.MICROSECONDS);
+        this.executor = requestExecutor();
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(executor);
+        this.server.createContext("/predict", this::predict);
+        this.server.createContext("/health", exchange -> respond(exchange, 200, "ok"));
+        this.server.createContext("/metrics", exchange -> respond(exchange, 200, metrics()));
+        this.server.createContext("/config", this::configure);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Listening on " + server.getAddress());
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public MicroBatcher getBatcher() {
+        return batcher;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        batcher.close();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Usage: InferenceServer checkpoint [port]
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: InferenceServer <checkpoint> [port]");
+            return;
+        }
+        final int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        final long start = System.nanoTime();
+        final NeuralNetwork model = ModelCheckpoint.load(Paths.get(args[0]), Runtime.getRuntime().availableProcessors());
+        log.info(String.format("Model loaded in %.1f ms, math kernels: %s", (System.nanoTime() - start) / 1e6, MathUtils.kernels()));
+        final InferenceServer server = new InferenceServer(model, new InetSocketAddress("localhost", port),
+                DEFAULT_MAX_BATCH, DEFAULT_MAX_DELAY_MICROS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            model.close();
+        }));
+        server.start();
+    }
+
+    private void predict(final HttpExchange exchange) throws IOException {
+        Body request = null;
+        double[] pooledFeatures = null;
+        CompletableFuture<?> pooledResult = null;
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "POST an image");
+                return;
+            }
+            request = readBody(exchange);
+            final byte[] body = request.bytes;
+            final int offset = isIdx(body, request.length) ? IDX_HEADER : 0;
+            final int images = checkImages(body, request.length, offset);
+
+            final CompletableFuture<?>[] results = new CompletableFuture<?>[images];
+            if (images == 1) {
+                pooledFeatures = acquireFeatures();
+                decode(body, offset, pooledFeatures);
+                results[0] = pooledResult = batcher.submit(pooledFeatures);
+            } else {
+                for (int i = 0; i < images; ++i) {
+                    final double[] features = new double[IMAGE_SIZE];
+                    decode(body, offset + i * IMAGE_SIZE, features);
+                    results[i] = batcher.submit(features);
+                }
+            }
+
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RESULT_TIMEOUT_MILLIS);
+            final StringBuilder json = new StringBuilder(64 + images * 256).append("{\"predictions\":[");
+            for (int i = 0; i < images; ++i) {
+                final double[] scores = (double[]) results[i].get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendPrediction(json, scores);
+            }
+            json.append("]}");
+            respond(exchange, 200, json.toString());
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "interrupted");
+        } catch (TimeoutException e) {
+            respond(exchange, 503, "timed out");
+        } catch (ExecutionException e) {
+            log.warn("Inference failed", e.getCause());
+            respond(exchange, 500, String.valueOf(e.getCause()));
+        } finally {
+            if (request != null && request.pooled) {
+                pixelBuffers.offer(request.bytes);
+            }
+            //a sample still queued is read later by the batcher, its buffer must not be reused
+            if (pooledFeatures != null && (pooledResult == null || pooledResult.isDone())) {
+                featureBuffers.offer(pooledFeatures);
+            }
+        }
+    }
+
+    private String metrics() {
+        return String.format(Locale.ROOT, "{\"queueDepth\":%d,\"batches\":%d,\"samples\":%d,\"averageBatchSize\":%.3f,"
+                        + "\"averageFill\":%.3f,\"maxBatch\":%d,\"maxDelayMicros\":%d,\"adaptive\":%b}",
+                batcher.getQueueDepth(), batcher.getBatchCount(), batcher.getSampleCount(), batcher.getAverageBatchSize(),
+                batcher.getAverageFill(), batcher.getMaxBatch(), batcher.getMaxDelay(TimeUnit.MICROSECONDS), batcher.isAdaptive());
+    }
+
+    private void configure(final HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "POST the new settings");
+            return;
+        }
+        final String query = exchange.getRequestURI().getQuery();
+        try {
+            for (String parameter : query == null ? new String[0] : query.split("&")) {
+                final String[] pair = parameter.split("=", 2);
+                final String value = pair.length > 1 ? pair[1] : "";
+                switch (pair[0]) {
+                    case "maxBatch":
+                        batcher.setMaxBatch(Integer.parseInt(value));
+                        break;
+                    case "maxDelayMicros":
+                        batcher.setMaxDelay(Long.parseLong(value), TimeUnit.MICROSECONDS);
+                        break;
+                    case "adaptive":
+                        batcher.setAdaptive(Boolean.parseBoolean(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting " + pair[0]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, String.valueOf(e.getMessage()));
+            return;
+        }
+        respond(exchange, 200, metrics());
+    }
+
+    /**
+     * Request body, only the first length bytes are valid
+     */
+    private static final class Body {
+        private final byte[] bytes;
+        private final int length;
+        private final boolean pooled;
+
+        private Body(final byte[] bytes, final int length, final boolean pooled) {
+            this.bytes = bytes;
+            this.length = length;
+            this.pooled = pooled;
+        }
+    }
+
+    /**
+     * Reads the body into a pooled buffer when it is a single image, into a new array otherwise
+     */
+    private Body readBody(final HttpExchange exchange) throws IOException {
+        final String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        final long contentLength = declared == null ? -1 : Long.parseLong(declared);
+        if (contentLength > MAX_BODY) {
+            throw new IllegalArgumentException("Request too large");
+        }
+        try (InputStream input = exchange.getRequestBody()) {
+            if (contentLength == IMAGE_SIZE) {
+                final byte[] pixels = acquirePixels();
+                readFully(input, pixels, IMAGE_SIZE);
+                return new Body(pixels, IMAGE_SIZE, true);
+            }
+            if (contentLength >= 0) {
+                final byte[] bytes = new byte[(int) contentLength];
+                readFully(input, bytes, bytes.length);
+                return new Body(bytes, bytes.length, false);
+            }
+            byte[] buffer = new byte[1 << 16];//chunked body of unknown length
+            int size = 0;
+            int read;
+            while ((read = input.read(buffer, size, buffer.length - size)) != -1) {
+                size += read;
+                if (size == buffer.length) {
+                    if (size >= MAX_BODY) {
+                        throw new IllegalArgumentException("Request too large");
+                    }
+                    buffer = Arrays.copyOf(buffer, Math.min(MAX_BODY, buffer.length * 2));
+                }
+            }
+            return new Body(buffer, size, false);
+        }
+    }
+
+    private static void readFully(final InputStream input, final byte[] buffer, final int length) throws IOException {
+        int size = 0;
+        while (size < length) {
+            final int read = input.read(buffer, size, length - size);
+            if (read == -1) {
+                throw new IllegalArgumentException("Truncated request body");
+            }
+            size += read;
+        }
+    }
+
+    private static boolean isIdx(final byte[] body, final int length) {
+        return length >= IDX_HEADER && ByteBuffer.wrap(body).getInt(0) == IMAGE_MAGIC;
+    }
+
+    /**
+     * @return number of images in the body
+     */
+    private static int checkImages(final byte[] body, final int length, final int offset) {
+        if (offset == IDX_HEADER) {
+            final ByteBuffer header = ByteBuffer.wrap(body, 0, IDX_HEADER);
+            final int images = header.getInt(4);
+            if (header.getInt(8) != ROWS || header.getInt(12) != COLUMNS) {
+                throw new IllegalArgumentException("Images must be " + ROWS + "x" + COLUMNS);
+            }
+            if (images < 1 || (long) images * IMAGE_SIZE > length - IDX_HEADER) {
+                throw new IllegalArgumentException("IDX batch is empty or truncated");
+            }
+            return images;
+        }
+        if (length == 0 || length % IMAGE_SIZE != 0) {
+            throw new IllegalArgumentException("Expected a multiple of " + IMAGE_SIZE + " bytes or an IDX image file");
+        }
+        return length / IMAGE_SIZE;
+    }
+
+    private static void decode(final byte[] pixels, final int offset, final double[] features) {
+        for (int j = 0; j < IMAGE_SIZE; ++j) {
+            features[j] = (pixels[offset + j] & 0xFF) / 255.0;//min-max normalization, as in training
+        }
+    }
+
+    private static void appendPrediction(final StringBuilder json, final double[] scores) {
+        json.append("{\"class\":").append(MathUtils.getResult(scores)).append(",\"scores\":[");
+        for (int j = 0; j < scores.length; ++j) {
+            if (j > 0) {
+                json.append(',');
+            }
+            json.append(scores[j]);
+        }
+        json.append("]}");
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", status == 200 && body.startsWith("{") ? "application/json" : "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private byte[] acquirePixels() {
+        final byte[] pixels = pixelBuffers.poll();
+        return pixels != null ? pixels : new byte[IMAGE_SIZE];
+    }
+
+    private double[] acquireFeatures() {
+        final double[] features = featureBuffers.poll();
+        return features != null ? features : new double[IMAGE_SIZE];
+    }
+
+    /**
+     * One virtual thread per request when available (JDK 21+), looked up reflectively since the code targets Java 8
+     */
+    static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(4 * Runtime.getRuntime().availableProcessors());
+        }
+    }
+}
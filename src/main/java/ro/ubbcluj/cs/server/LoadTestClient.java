@@ -0,0 +1,157 @@
+package ro.ubbcluj.cs.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Closed-loop load generator for InferenceServer
+ * <p>
+ * Every client thread sends single-image requests back to back; after a warm-up, the latency of
+ * each request is recorded and the percentiles and the throughput are printed.
+ * <p>
+ * Usage: LoadTestClient [url] [clients] [requests] [idx image file]
+ * <br>
+ * Without an image file, random images are sent.
+ */
+public class LoadTestClient {
+
+    private static final String DEFAULT_URL = "http://localhost:8080/predict";
+    private static final int DEFAULT_CLIENTS = 16;
+    private static final int DEFAULT_REQUESTS = 20000;
+    private static final int RANDOM_IMAGES = 256;
+
+    public static void main(final String[] args) throws Exception {
+        final URL url = new URL(args.length > 0 ? args[0] : DEFAULT_URL);
+        final int clients = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CLIENTS;
+        final int requests = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_REQUESTS;
+        final byte[][] images = args.length > 3 ? readImages(args[3]) : randomImages();
+        final int warmUp = Math.min(requests / 10, 2000);
+
+        System.out.println(String.format("%s: %d clients, %d requests (+%d warm-up)", url, clients, requests, warmUp));
+        run(url, clients, warmUp, images);
+        final long[] latencies = new long[requests];
+        final long start = System.nanoTime();
+        final int errors = run(url, clients, requests, images, latencies);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.println(String.format("throughput: %.0f requests/s, errors: %d", requests / seconds, errors));
+        System.out.println(String.format("latency (ms): p50 %.3f, p90 %.3f, p99 %.3f, p99.9 %.3f, max %.3f",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6));
+    }
+
+    private static void run(final URL url, final int clients, final int requests, final byte[][] images) throws Exception {
+        run(url, clients, requests, images, new long[requests]);
+    }
+
+    /**
+     * @return number of failed requests
+     */
+    private static int run(final URL url, final int clients, final int requests, final byte[][] images,
+                           final long[] latencies) throws InterruptedException, ExecutionException {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            final List<Future<?>> futures = new ArrayList<>(clients);
+            for (int c = 0; c < clients; ++c) {
+                futures.add(executor.submit(() -> {
+                    final byte[] response = new byte[8192];
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests) {
+                        final long start = System.nanoTime();
+                        try {
+                            post(url, images[i % images.length], response);
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return errors.get();
+    }
+
+    /**
+     * Sends one image and drains the answer, the connection is kept alive by HttpURLConnection
+     */
+    private static void post(final URL url, final byte[] image, final byte[] response) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(image.length);
+        connection.setRequestProperty("Content-Type", "application/octet-stream");
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(image);
+        }
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            drain(connection.getErrorStream(), response);
+            throw new IOException("HTTP " + connection.getResponseCode());
+        }
+        drain(connection.getInputStream(), response);
+    }
+
+    private static void drain(final InputStream input, final byte[] buffer) throws IOException {
+        if (input == null) {
+            return;
+        }
+        try (InputStream stream = input) {
+            while (stream.read(buffer) != -1) {
+                //discard
+            }
+        }
+    }
+
+    private static double percentile(final long[] sorted, final double quantile) {
+        final int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static byte[][] randomImages() {
+        final Random random = new Random(1234);
+        final byte[][] images = new byte[RANDOM_IMAGES][InferenceServer.IMAGE_SIZE];
+        for (byte[] image : images) {
+            random.nextBytes(image);
+        }
+        return images;
+    }
+
+    /**
+     * Splits an IDX image file into raw images
+     */
+    private static byte[][] readImages(final String file) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(file)));
+        if (buffer.getInt() != 2051 || buffer.getInt(8) != InferenceServer.ROWS || buffer.getInt(12) != InferenceServer.COLUMNS) {
+            throw new IOException("Expected an IDX file of " + InferenceServer.ROWS + "x" + InferenceServer.COLUMNS + " images");
+        }
+        final int count = Math.min(buffer.getInt(4), (buffer.capacity() - 16) / InferenceServer.IMAGE_SIZE);
+        final byte[][] images = new byte[count][InferenceServer.IMAGE_SIZE];
+        buffer.position(16);
+        for (byte[] image : images) {
+            buffer.get(image);
+        }
+        return images;
+    }
+}
@@ -0,0 +1,249 @@
+package ro.ubbcluj.cs.server;
+
+import ro.ubbcluj.cs.ann.impl.Classifier;
+import ro.ubbcluj.cs.ann.impl.MathUtils;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Groups concurrent single-sample requests into batches for Classifier.predictBatch
+ * <p>
+ * A dedicated thread takes the first waiting sample, then keeps collecting samples until the batch is full
+ * or maxDelay has passed since the first one, and evaluates them together. A lone request therefore waits
+ * at most maxDelay, while under load the cost of the forward pass is shared by a whole batch.
+ * <p>
+ * When adaptive, the wait is skipped while recent batches held about one sample: the load is too low for
+ * waiting to pay off, and the sample is evaluated at once. Samples arriving during an evaluation are still
+ * grouped, which raises the average again as the load grows; every PROBE_INTERVAL-th batch waits anyway.
+ * <p>
+ * The batch size, the delay and the adaptive mode can be changed at any time, they apply from the next batch.
+ */
+public final class MicroBatcher implements Closeable {
+
+    /**
+     * Average batch size under which an adaptive batcher stops waiting
+     */
+    private static final double LOW_LOAD = 1.5;
+    private static final int PROBE_INTERVAL = 16;
+
+    /**
+     * Weight of the last batch in the average batch size and fill
+     */
+    private static final double SMOOTHING = 0.1;
+
+    private static final class Request {
+        private final double[] features;
+        private final CompletableFuture<double[]> result = new CompletableFuture<>();
+
+        private Request(final double[] features) {
+            this.features = features;
+        }
+    }
+
+    private final Classifier model;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean closed;
+
+    private volatile int maxBatch;
+    private volatile long maxDelayNanos;
+    private volatile boolean adaptive;
+
+    /**
+     * Metrics, written by the worker thread only
+     */
+    private volatile long batches;
+    private volatile long samples;
+    private volatile double averageSize = 1;
+    private volatile double averageFill;
+
+    /**
+     * @param model    model evaluating the batches
+     * @param maxBatch maximum number of samples evaluated together
+     * @param maxDelay how long the first sample of a batch may wait for others
+     * @param unit     unit of maxDelay
+     */
+    public MicroBatcher(final Classifier model, final int maxBatch, final long maxDelay, final TimeUnit unit) {
+        setMaxBatch(maxBatch);
+        setMaxDelay(maxDelay, unit);
+        this.model = model;
+        this.adaptive = true;
+        this.worker = new Thread(this::run, "micro-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * @param features sample, it must not be modified until the result is completed
+     * @return the model's outputs for the sample
+     */
+    public CompletableFuture<double[]> submit(final double[] features) {
+        final Request request = new Request(features);
+        if (closed) {
+            request.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+            return request.result;
+        }
+        queue.add(request);
+        if (closed && queue.remove(request)) {
+            //closed between the check and the add, after close() drained the queue
+            request.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        }
+        return request.result;
+    }
+
+    /**
+     * @param features sample, it must not be modified until the result is completed
+     * @return the class predicted for the sample
+     */
+    public CompletableFuture<Integer> classify(final double[] features) {
+        return submit(features).thenApply(MathUtils::getResult);
+    }
+
+    public void setMaxBatch(final int maxBatch) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.maxBatch = maxBatch;
+    }
+
+    public void setMaxDelay(final long maxDelay, final TimeUnit unit) {
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("Delay must not be negative");
+        }
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    public void setAdaptive(final boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    public long getMaxDelay(final TimeUnit unit) {
+        return unit.convert(maxDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * @return number of samples waiting for a batch
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return number of batches evaluated so far
+     */
+    public long getBatchCount() {
+        return batches;
+    }
+
+    /**
+     * @return number of samples evaluated so far
+     */
+    public long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * @return recent average number of samples per batch
+     */
+    public double getAverageBatchSize() {
+        return averageSize;
+    }
+
+    /**
+     * @return recent average of batch size / maxBatch, between 0 and 1
+     */
+    public double getAverageFill() {
+        return averageFill;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        worker.interrupt();
+        failQueued(new IllegalStateException("Batcher is closed"));
+    }
+
+    private void failQueued(final Throwable cause) {
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(cause);
+        }
+    }
+
+    private void run() {
+        final List<Request> batch = new ArrayList<>();
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                final long deadline = System.nanoTime() + maxDelayNanos;
+                final int limit = maxBatch;
+                queue.drainTo(batch, limit - batch.size());
+                if (shouldWait()) {
+                    while (batch.size() < limit) {
+                        final Request next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, limit - batch.size());
+                    }
+                }
+                record(batch.size(), limit);//before the callers are woken up, so they see their batch counted
+                evaluate(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            //closed
+        } finally {
+            //also reached if the worker dies, later submits then fail at once instead of hanging
+            closed = true;
+            final IllegalStateException cause = new IllegalStateException("Batcher is closed");
+            for (Request request : batch) {
+                request.result.completeExceptionally(cause);
+            }
+            failQueued(cause);
+        }
+    }
+
+    private boolean shouldWait() {
+        return !adaptive || averageSize >= LOW_LOAD || batches % PROBE_INTERVAL == PROBE_INTERVAL - 1;
+    }
+
+    private void record(final int size, final int limit) {
+        batches++;
+        samples += size;
+        averageSize += SMOOTHING * (size - averageSize);
+        averageFill += SMOOTHING * ((double) size / limit - averageFill);
+    }
+
+    private void evaluate(final List<Request> batch) {
+        final double[][] inputs = new double[batch.size()][];
+        for (int i = 0; i < inputs.length; ++i) {
+            inputs[i] = batch.get(i).features;
+        }
+        try {
+            final double[][] outputs = model.predictBatch(inputs);
+            for (int i = 0; i < outputs.length; ++i) {
+                batch.get(i).result.complete(outputs[i]);
+            }
+        } catch (Throwable e) {
+            for (Request request : batch) {
+                request.result.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -3,17 +3,17 @@ package ro.ubbcluj.cs.svm;
 import libsvm.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.ubbcluj.cs.io.Dataset;
 import ro.ubbcluj.cs.io.DigitImageLoadingService;
-import ro.ubbcluj.cs.io.TrainingExample;
 
 import java.util.List;
+import java.util.Random;
 
 public class LibSVMApp {
 
 
     private static Logger log = LoggerFactory.getLogger(LibSVMApp.class);
 
-    private static final int CLASSES = 10;
     private static final int INPUTS = 28 * 28;
 
 
@@ -25,6 +25,23 @@ public class LibSVMApp {
     private static final String TESTING_LABELS = "/test/tst10k-labels-ubyte";
     private static final String TESTING_FEATURES = "/test/tst10k-images-ubyte";
 
+    /**
+     * Binary problems trained concurrently, and the kernel cache they share, in MB
+     */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final double CACHE_BUDGET = Runtime.getRuntime().maxMemory() / 2 / (1 << 20);
+
+    /**
+     * Cross-validate C and gamma on a sample of the training set before training, instead of the fixed values
+     */
+    private static final boolean GRID_SEARCH = false;
+    private static final int SEARCH_SAMPLES = 10000;
+    private static final int FOLDS = 5;
+    private static final double SURVIVAL_RATE = 0.5;
+    private static final double[] SEARCH_C = {1, 4, 16, 64, 256};
+    private static final double[] SEARCH_GAMMA = {0.005, 0.01, 0.02, 0.03, 0.05, 0.1};
+    private static final long SEED = 1234;
+
     private static final svm_parameter svm_parameter;
 
     static {
@@ -36,48 +53,47 @@ public class LibSVMApp {
         svm_parameter.nu = 0.5;
         svm_parameter.svm_type = svm_parameter.C_SVC;
         svm_parameter.kernel_type = svm_parameter.RBF;
-        svm_parameter.cache_size = 20000;
         svm_parameter.eps = 0.001;
     }
 
 
     public static void main(String[] args) throws Exception {
 
-        final List<TrainingExample> trainData = new DigitImageLoadingService(TRAINING_LABELS, TRAIN_FEATURES, 1).loadDigitImages();
-        final List<TrainingExample> testData = new DigitImageLoadingService(TESTING_LABELS, TESTING_FEATURES, 1).loadDigitImages();
+        final Dataset trainData = new DigitImageLoadingService(TRAINING_LABELS, TRAIN_FEATURES, 1).loadDataset();
+        final Dataset testData = new DigitImageLoadingService(TESTING_LABELS, TESTING_FEATURES, 1).loadDataset();
 
         log.info(String.format("IMAGE DATA LOADED: %d training, %d test", trainData.size(), testData.size()));
 
 
-        final svm_problem problem = new svm_problem();
-        final int records = trainData.size();
-
-        problem.y = new double[records];
-        problem.l = records;
-        problem.x = new svm_node[records][INPUTS];
-
-        for (int i = 0; i < records; i++) {
-            problem.x[i] = trainData.get(i).getSvmNodes();
-            problem.y[i] = trainData.get(i).getClazz();
+        final SvmNodeEncoder encoder = new SvmNodeEncoder(INPUTS);
+        final svm_problem problem = encoder.problem(trainData);
+        long nodeCount = 0;
+        for (svm_node[] x : problem.x) {
+            nodeCount += x.length;
+        }
+        log.info(String.format("SPARSE PROBLEM: %d nodes, %.1f per image", nodeCount, (double) nodeCount / problem.l));
+
+
+        if (GRID_SEARCH) {
+            trainData.shuffle(new Random(SEED));
+            final Dataset sample = trainData.subset(0, Math.min(SEARCH_SAMPLES, trainData.size()));
+            log.info(String.format("GRID SEARCH: %d samples, %d folds", sample.size(), FOLDS));
+            final List<SvmGridSearch.Score> scores = new SvmGridSearch(FOLDS, THREADS, CACHE_BUDGET, SURVIVAL_RATE, SEED)
+                    .search(encoder.problem(sample), svm_parameter, SvmGridSearch.grid(SEARCH_C, SEARCH_GAMMA));
+            log.info("\n" + SvmGridSearch.report(scores));
+            svm_parameter.C = scores.get(0).getCandidate().getC();
+            svm_parameter.gamma = scores.get(0).getCandidate().getGamma();
         }
 
-
-        log.info("TRAINING SVM");
-        svm_model model = svm.svm_train(problem, svm_parameter);
+        log.info(String.format("TRAINING SVM: C=%s, gamma=%s, %d threads, %.0f MB kernel cache",
+                svm_parameter.C, svm_parameter.gamma, THREADS, CACHE_BUDGET));
+        svm_model model = new ParallelSvmTrainer(THREADS, CACHE_BUDGET).train(problem, svm_parameter);
 
         log.info("TESTING SVM");
+        final int[] predicted = new SvmBatchPredictor(model, INPUTS, THREADS).predict(testData);
         int correct = 0;
-        for (final TrainingExample test : testData) {
-
-            final svm_node[] nodes = test.getSvmNodes();
-            final int[] labels = new int[CLASSES];
-
-
-            svm.svm_get_labels(model, labels);
-
-            final double predicted = svm.svm_predict(model, nodes);
-
-            if ((int) predicted == test.getClazz()) {
+        for (int i = 0; i < testData.size(); i++) {
+            if (predicted[i] == testData.getLabel(i)) {
                 correct++;
             }
         }
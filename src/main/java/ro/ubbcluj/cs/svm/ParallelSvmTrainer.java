@@ -0,0 +1,313 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Multi-class SVM training with the one-vs-one binary problems trained concurrently
+ * <p>
+ * svm.svm_train solves the k * (k - 1) / 2 binary problems of a k-class C_SVC or NU_SVC one after another.
+ * Here every pair of classes becomes its own two-class problem, holding the samples of both classes in their
+ * original order, trained by svm.svm_train on a bounded pool, the largest pairs first.
+ * The binary solutions are then assembled exactly as svm.svm_train assembles them: the resulting model has
+ * the same labels, support vectors, coefficients and biases, and svm.svm_predict gives the same predictions.
+ * <p>
+ * Instead of the parameter's cache_size, the kernel cache of every binary problem gets an equal share of
+ * a total budget, never more than its full kernel matrix. Probability estimates are not supported.
+ */
+public class ParallelSvmTrainer {
+
+    private static final double MEGABYTE = 1 << 20;
+
+    private final ForkJoinPool pool;
+
+    private final int threads;
+
+    /**
+     * Total kernel cache of the concurrent binary problems, in MB
+     */
+    private final double cacheBudget;
+
+    /**
+     * @param threads     number of binary problems trained concurrently
+     * @param cacheBudget kernel cache shared by the concurrent problems, in MB
+     */
+    public ParallelSvmTrainer(final int threads, final double cacheBudget) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        if (cacheBudget <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive");
+        }
+        this.threads = threads;
+        this.cacheBudget = cacheBudget;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Trains a multi-class model, problems of at most two classes are handed to svm.svm_train
+     *
+     * @param problem   training samples, not modified
+     * @param parameter C_SVC or NU_SVC parameters, not modified
+     * @return model usable by svm.svm_predict
+     */
+    public svm_model train(final svm_problem problem, final svm_parameter parameter) {
+        if (parameter.svm_type != svm_parameter.C_SVC && parameter.svm_type != svm_parameter.NU_SVC) {
+            throw new IllegalArgumentException("Only C_SVC and NU_SVC are trained one-vs-one");
+        }
+        if (parameter.probability != 0) {
+            throw new IllegalArgumentException("Probability estimates are not supported");
+        }
+        final Classes classes = new Classes(problem);
+        final int k = classes.label.length;
+        if (k <= 2) {
+            return svm.svm_train(problem, withCache(parameter, cacheBudget));
+        }
+        final String error = svm.svm_check_parameter(problem, withCache(parameter, cacheBudget));
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+
+        final List<Pair> pairs = new ArrayList<>(k * (k - 1) / 2);
+        for (int i = 0; i < k; ++i) {
+            for (int j = i + 1; j < k; ++j) {
+                pairs.add(new Pair(pairs.size(), i, j));
+            }
+        }
+        final List<Callable<Solution>> tasks = new ArrayList<>(pairs.size());
+        final double share = cacheBudget / Math.min(threads, pairs.size());
+        pairs.stream()
+                .sorted(Comparator.comparingInt((Pair pair) -> classes.count[pair.i] + classes.count[pair.j]).reversed())
+                .forEach(pair -> tasks.add(() -> solve(problem, parameter, classes, pair, share)));
+
+        final Solution[] solutions = new Solution[pairs.size()];
+        for (final Future<Solution> future : pool.invokeAll(tasks)) {
+            try {
+                final Solution solution = future.get();
+                solutions[solution.pair.index] = solution;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Training interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Training failed", e.getCause());
+            }
+        }
+        return assemble(problem, parameter, classes, solutions);
+    }
+
+    /**
+     * Trains the binary problem of a pair of classes, the first class labelled 0 and the second 1
+     * so that the first one is the positive class, as in svm.svm_train
+     */
+    private static Solution solve(final svm_problem problem, final svm_parameter parameter, final Classes classes,
+                                  final Pair pair, final double cacheShare) {
+        final int ci = classes.count[pair.i];
+        final int cj = classes.count[pair.j];
+        final svm_problem binary = new svm_problem();
+        binary.l = ci + cj;
+        binary.x = new svm_node[binary.l][];
+        binary.y = new double[binary.l];
+        for (int k = 0; k < ci; ++k) {
+            binary.x[k] = problem.x[classes.perm[classes.start[pair.i] + k]];
+        }
+        for (int k = 0; k < cj; ++k) {
+            binary.x[ci + k] = problem.x[classes.perm[classes.start[pair.j] + k]];
+            binary.y[ci + k] = 1;
+        }
+
+        final double matrix = (double) binary.l * binary.l * Float.BYTES / MEGABYTE;
+        final svm_parameter binaryParameter = withCache(parameter, Math.min(cacheShare, matrix));
+        remapWeights(parameter, classes.label[pair.i], classes.label[pair.j], binaryParameter);
+
+        final svm_model model = svm.svm_train(binary, binaryParameter);
+        final double[] alpha = new double[binary.l];
+        for (int q = 0; q < model.l; ++q) {
+            alpha[model.sv_indices[q] - 1] = model.sv_coef[0][q];
+        }
+        return new Solution(pair, alpha, model.rho[0]);
+    }
+
+    /**
+     * Keeps the class weights of the pair, in their original order, relabelled 0 and 1
+     */
+    private static void remapWeights(final svm_parameter parameter, final int first, final int second,
+                                     final svm_parameter binaryParameter) {
+        final List<Integer> labels = new ArrayList<>();
+        final List<Double> weights = new ArrayList<>();
+        for (int w = 0; w < parameter.nr_weight; ++w) {
+            if (parameter.weight_label[w] == first || parameter.weight_label[w] == second) {
+                labels.add(parameter.weight_label[w] == first ? 0 : 1);
+                weights.add(parameter.weight[w]);
+            }
+        }
+        binaryParameter.nr_weight = labels.size();
+        binaryParameter.weight_label = labels.stream().mapToInt(Integer::intValue).toArray();
+        binaryParameter.weight = weights.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * Builds the model from the binary solutions, following svm.svm_train
+     */
+    private static svm_model assemble(final svm_problem problem, final svm_parameter parameter,
+                                      final Classes classes, final Solution[] solutions) {
+        final int k = classes.label.length;
+        final boolean[] nonZero = new boolean[problem.l];
+        for (Solution solution : solutions) {
+            final int si = classes.start[solution.pair.i];
+            final int sj = classes.start[solution.pair.j];
+            final int ci = classes.count[solution.pair.i];
+            final int cj = classes.count[solution.pair.j];
+            for (int q = 0; q < ci; ++q) {
+                if (Math.abs(solution.alpha[q]) > 0) {
+                    nonZero[si + q] = true;
+                }
+            }
+            for (int q = 0; q < cj; ++q) {
+                if (Math.abs(solution.alpha[ci + q]) > 0) {
+                    nonZero[sj + q] = true;
+                }
+            }
+        }
+
+        final svm_model model = new svm_model();
+        model.param = parameter;
+        model.nr_class = k;
+        model.label = classes.label.clone();
+        model.rho = new double[solutions.length];
+        for (int p = 0; p < solutions.length; ++p) {
+            model.rho[p] = solutions[p].rho;
+        }
+
+        model.nSV = new int[k];
+        final int[] nonZeroStart = new int[k];
+        int total = 0;
+        for (int i = 0; i < k; ++i) {
+            for (int q = 0; q < classes.count[i]; ++q) {
+                if (nonZero[classes.start[i] + q]) {
+                    ++model.nSV[i];
+                }
+            }
+            nonZeroStart[i] = total;
+            total += model.nSV[i];
+        }
+        model.l = total;
+        model.SV = new svm_node[total][];
+        model.sv_indices = new int[total];
+        int p = 0;
+        for (int i = 0; i < problem.l; ++i) {
+            if (nonZero[i]) {
+                model.SV[p] = problem.x[classes.perm[i]];
+                model.sv_indices[p++] = classes.perm[i] + 1;
+            }
+        }
+
+        model.sv_coef = new double[k - 1][total];
+        for (Solution solution : solutions) {
+            final int i = solution.pair.i;
+            final int j = solution.pair.j;
+            final int ci = classes.count[i];
+            int q = nonZeroStart[i];
+            for (int s = 0; s < ci; ++s) {
+                if (nonZero[classes.start[i] + s]) {
+                    model.sv_coef[j - 1][q++] = solution.alpha[s];
+                }
+            }
+            q = nonZeroStart[j];
+            for (int s = 0; s < classes.count[j]; ++s) {
+                if (nonZero[classes.start[j] + s]) {
+                    model.sv_coef[i][q++] = solution.alpha[ci + s];
+                }
+            }
+        }
+        return model;
+    }
+
+    private static svm_parameter withCache(final svm_parameter parameter, final double cacheSize) {
+        final svm_parameter copy = (svm_parameter) parameter.clone();
+        copy.cache_size = cacheSize;
+        return copy;
+    }
+
+    /**
+     * Samples grouped by class, the classes in order of first appearance, as svm.svm_train groups them
+     */
+    private static class Classes {
+        private final int[] label;
+        private final int[] count;
+        private final int[] start;
+
+        /**
+         * Indices of the samples, class after class, each class in the original order
+         */
+        private final int[] perm;
+
+        private Classes(final svm_problem problem) {
+            final List<Integer> labels = new ArrayList<>();
+            final List<Integer> counts = new ArrayList<>();
+            final int[] classOf = new int[problem.l];
+            for (int i = 0; i < problem.l; ++i) {
+                final int y = (int) problem.y[i];
+                int c = labels.indexOf(y);
+                if (c < 0) {
+                    c = labels.size();
+                    labels.add(y);
+                    counts.add(0);
+                }
+                counts.set(c, counts.get(c) + 1);
+                classOf[i] = c;
+            }
+            this.label = labels.stream().mapToInt(Integer::intValue).toArray();
+            this.count = counts.stream().mapToInt(Integer::intValue).toArray();
+            this.start = new int[label.length];
+            for (int c = 1; c < label.length; ++c) {
+                start[c] = start[c - 1] + count[c - 1];
+            }
+            this.perm = new int[problem.l];
+            final int[] next = start.clone();
+            for (int i = 0; i < problem.l; ++i) {
+                perm[next[classOf[i]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * p-th pair of classes, in the order of svm.svm_train
+     */
+    private static class Pair {
+        private final int index;
+        private final int i;
+        private final int j;
+
+        private Pair(final int index, final int i, final int j) {
+            this.index = index;
+            this.i = i;
+            this.j = j;
+        }
+    }
+
+    /**
+     * Signed coefficients y * alpha of the samples of a pair, first class then second class, and the bias
+     */
+    private static class Solution {
+        private final Pair pair;
+        private final double[] alpha;
+        private final double rho;
+
+        private Solution(final Pair pair, final double[] alpha, final double rho) {
+            this.pair = pair;
+            this.alpha = alpha;
+            this.rho = rho;
+        }
+    }
+}
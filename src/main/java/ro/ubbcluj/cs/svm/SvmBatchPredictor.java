@@ -0,0 +1,235 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import ro.ubbcluj.cs.ann.impl.MathUtils;
+import ro.ubbcluj.cs.io.Dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Batch prediction with a trained RBF classification model
+ * <p>
+ * The support vectors are copied once into a dense row-major matrix, with their squared norms.
+ * The kernels of a block of samples against all the support vectors are then
+ * exp(-gamma * (|x|^2 + |sv|^2 - 2 * x . sv)), the dot products being a single blocked matrix product,
+ * instead of one merge of linked svm_node arrays per kernel as in svm.svm_predict.
+ * The one-vs-one votes are those of svm.svm_predict; the kernels differ from its own only by rounding.
+ * <p>
+ * Every worker predicts a contiguous shard of the samples, a block at a time, in its own buffers.
+ */
+public class SvmBatchPredictor {
+
+    /**
+     * Samples whose kernels are computed at once
+     */
+    private static final int BLOCK = 64;
+
+    private final ForkJoinPool pool;
+
+    private final int threads;
+
+    private final int featureCount;
+
+    private final double gamma;
+
+    private final int[] label;
+
+    /**
+     * Support vectors of each class: [start[c], start[c] + count[c])
+     */
+    private final int[] start;
+    private final int[] count;
+
+    private final int supportVectors;
+
+    /**
+     * supportVectors x featureCount, row-major
+     */
+    private final double[] vectors;
+
+    private final double[] norms;
+
+    private final double[][] coefficients;
+
+    private final double[] rho;
+
+    /**
+     * @param model        RBF model of a C_SVC or NU_SVC, node indices in [0, featureCount)
+     * @param featureCount number of features of a sample
+     * @param threads      number of workers
+     */
+    public SvmBatchPredictor(final svm_model model, final int featureCount, final int threads) {
+        if (model.param.kernel_type != svm_parameter.RBF) {
+            throw new IllegalArgumentException("Only RBF models are supported");
+        }
+        if (model.param.svm_type != svm_parameter.C_SVC && model.param.svm_type != svm_parameter.NU_SVC) {
+            throw new IllegalArgumentException("Only classification models are supported");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.threads = threads;
+        this.featureCount = featureCount;
+        this.gamma = model.param.gamma;
+        this.label = model.label.clone();
+        this.count = model.nSV.clone();
+        this.start = new int[model.nr_class];
+        for (int c = 1; c < model.nr_class; ++c) {
+            start[c] = start[c - 1] + count[c - 1];
+        }
+        this.supportVectors = model.l;
+        this.vectors = new double[Math.multiplyExact(model.l, featureCount)];
+        this.norms = new double[model.l];
+        for (int k = 0; k < model.l; ++k) {
+            for (svm_node node : model.SV[k]) {
+                if (node.index < 0 || node.index >= featureCount) {
+                    throw new IllegalArgumentException("Feature index " + node.index + " out of " + featureCount);
+                }
+                vectors[k * featureCount + node.index] = node.value;
+            }
+            norms[k] = MathUtils.dot(vectors, k * featureCount, vectors, k * featureCount, featureCount);
+        }
+        this.coefficients = new double[model.sv_coef.length][];
+        for (int c = 0; c < coefficients.length; ++c) {
+            coefficients[c] = model.sv_coef[c].clone();
+        }
+        this.rho = model.rho.clone();
+    }
+
+    /**
+     * @param inputs dense samples of getFeatureCount() features
+     * @return predicted label of every sample
+     */
+    public int[] predict(final double[][] inputs) {
+        for (double[] input : inputs) {
+            if (input.length != featureCount) {
+                throw new IllegalArgumentException("Invalid number of inputs, expected " + featureCount);
+            }
+        }
+        return predict(inputs.length, (sample, row, offset) -> System.arraycopy(inputs[sample], 0, row, offset, featureCount));
+    }
+
+    /**
+     * Decodes and predicts every sample of the dataset, no more than a block per worker is decoded at a time
+     *
+     * @return predicted label of every sample
+     */
+    public int[] predict(final Dataset dataset) {
+        if (dataset.getFeatureCount() != featureCount) {
+            throw new IllegalArgumentException("Expected samples of " + featureCount + " features");
+        }
+        return predict(dataset.size(), (sample, row, offset) -> {
+            final byte[] pixels = dataset.getPixels();
+            final int from = dataset.getPixelOffset(sample);
+            for (int j = 0; j < featureCount; ++j) {
+                row[offset + j] = (pixels[from + j] & 0xFF) / 255.0;//min-max normalization
+            }
+        });
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Writes the dense features of a sample at the given offset
+     */
+    private interface RowFiller {
+        void fill(int sample, double[] row, int offset);
+    }
+
+    private int[] predict(final int size, final RowFiller filler) {
+        final int[] predictions = new int[size];
+        final List<Callable<Void>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; ++i) {
+            final int from = (int) ((long) size * i / threads);
+            final int to = (int) ((long) size * (i + 1) / threads);
+            workers.add(() -> {
+                final double[] rows = new double[BLOCK * featureCount];
+                final double[] kernels = new double[BLOCK * supportVectors];
+                final int[] votes = new int[label.length];
+                for (int j = from; j < to; j += BLOCK) {
+                    final int block = Math.min(BLOCK, to - j);
+                    for (int b = 0; b < block; ++b) {
+                        filler.fill(j + b, rows, b * featureCount);
+                    }
+                    kernels(block, rows, kernels);
+                    for (int b = 0; b < block; ++b) {
+                        predictions[j + b] = vote(kernels, b * supportVectors, votes);
+                    }
+                }
+                return null;
+            });
+        }
+
+        for (final Future<Void> future : pool.invokeAll(workers)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Prediction interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Prediction failed", e.getCause());
+            }
+        }
+        return predictions;
+    }
+
+    /**
+     * kernels[b][k] = exp(-gamma * |rows[b] - vectors[k]|^2)
+     */
+    private void kernels(final int block, final double[] rows, final double[] kernels) {
+        Arrays.fill(kernels, 0, block * supportVectors, 0);
+        MathUtils.gemmNT(block, supportVectors, featureCount, rows, 0, vectors, 0, kernels, 0);
+        for (int b = 0; b < block; ++b) {
+            final double norm = MathUtils.dot(rows, b * featureCount, rows, b * featureCount, featureCount);
+            final int offset = b * supportVectors;
+            for (int k = 0; k < supportVectors; ++k) {
+                final double distance = Math.max(0, norm + norms[k] - 2 * kernels[offset + k]);
+                kernels[offset + k] = Math.exp(-gamma * distance);
+            }
+        }
+    }
+
+    /**
+     * One-vs-one voting of svm.svm_predict, ties going to the class that comes first
+     *
+     * @return predicted label
+     */
+    private int vote(final double[] kernels, final int offset, final int[] votes) {
+        final int classes = label.length;
+        Arrays.fill(votes, 0);
+        int p = 0;
+        for (int i = 0; i < classes; ++i) {
+            for (int j = i + 1; j < classes; ++j) {
+                double sum = 0;
+                final double[] coefficientsI = coefficients[j - 1];
+                final double[] coefficientsJ = coefficients[i];
+                for (int k = start[i]; k < start[i] + count[i]; ++k) {
+                    sum += coefficientsI[k] * kernels[offset + k];
+                }
+                for (int k = start[j]; k < start[j] + count[j]; ++k) {
+                    sum += coefficientsJ[k] * kernels[offset + k];
+                }
+                sum -= rho[p++];
+                ++votes[sum > 0 ? i : j];
+            }
+        }
+        int best = 0;
+        for (int c = 1; c < classes; ++c) {
+            if (votes[c] > votes[best]) {
+                best = c;
+            }
+        }
+        return label[best];
+    }
+}
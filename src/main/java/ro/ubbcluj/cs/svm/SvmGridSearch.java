@@ -0,0 +1,334 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * k-fold cross-validated search of C and gamma
+ * <p>
+ * The samples are split once into folds, shared read-only by every task: the training problem of a fold
+ * only references the node arrays of the original problem. The candidates are evaluated fold after fold,
+ * every (candidate, fold) model trained concurrently on a bounded pool. After each fold the candidates are ranked by
+ * their accuracy so far and only the best fraction of them go on to the next fold, so the losing
+ * candidates cost a fold or two instead of all of them (successive halving for a fraction of 1/2).
+ * <p>
+ * The result is ranked by the number of folds a candidate survived, then by its cross-validated accuracy.
+ */
+public class SvmGridSearch {
+
+    private final ForkJoinPool pool;
+
+    private final int folds;
+
+    private final int threads;
+
+    private final double cacheBudget;
+
+    /**
+     * Kernel cache of every concurrent model, in MB
+     */
+    private final double cacheShare;
+
+    /**
+     * Fraction of the candidates kept after every fold but the last one
+     */
+    private final double survivalRate;
+
+    private final long seed;
+
+    /**
+     * @param folds        number of folds, at least 2
+     * @param threads      number of models trained concurrently
+     * @param cacheBudget  kernel cache shared by the concurrent models, in MB
+     * @param survivalRate fraction of the candidates kept after each fold, 1 to evaluate every candidate on every fold
+     * @param seed         seed of the split into folds
+     */
+    public SvmGridSearch(final int folds, final int threads, final double cacheBudget, final double survivalRate, final long seed) {
+        if (folds < 2) {
+            throw new IllegalArgumentException("At least two folds are needed");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        if (cacheBudget <= 0) {
+            throw new IllegalArgumentException("Cache budget must be positive");
+        }
+        if (survivalRate <= 0 || survivalRate > 1) {
+            throw new IllegalArgumentException("Survival rate must be in (0, 1]");
+        }
+        this.pool = new ForkJoinPool(threads);
+        this.folds = folds;
+        this.threads = threads;
+        this.cacheBudget = cacheBudget;
+        this.cacheShare = cacheBudget / threads;
+        this.survivalRate = survivalRate;
+        this.seed = seed;
+    }
+
+    /**
+     * @return every combination of the given values
+     */
+    public static List<Candidate> grid(final double[] cs, final double[] gammas) {
+        final List<Candidate> candidates = new ArrayList<>(cs.length * gammas.length);
+        for (double c : cs) {
+            for (double gamma : gammas) {
+                candidates.add(new Candidate(c, gamma));
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @return candidates drawn log-uniformly from [minC, maxC] x [minGamma, maxGamma]
+     */
+    public static List<Candidate> random(final int count, final double minC, final double maxC,
+                                         final double minGamma, final double maxGamma, final Random random) {
+        if (minC <= 0 || minGamma <= 0 || maxC < minC || maxGamma < minGamma) {
+            throw new IllegalArgumentException("Ranges must be positive and not empty");
+        }
+        final List<Candidate> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            candidates.add(new Candidate(logUniform(minC, maxC, random), logUniform(minGamma, maxGamma, random)));
+        }
+        return candidates;
+    }
+
+    /**
+     * Cross-validates the candidates
+     *
+     * @param problem    training samples, not modified
+     * @param parameter  other parameters of the models, C and gamma are taken from the candidates
+     * @param candidates given candidates
+     * @return scores, the best first
+     */
+    public List<Score> search(final svm_problem problem, final svm_parameter parameter, final List<Candidate> candidates) {
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("At least one candidate is needed");
+        }
+        if (problem.l < folds) {
+            throw new IllegalArgumentException("Fewer samples than folds");
+        }
+        final Fold[] split = split(problem);
+        final List<Score> scores = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            scores.add(new Score(candidate));
+        }
+
+        List<Score> survivors = scores;
+        for (int f = 0; f < folds; ++f) {
+            final Fold fold = split[f];
+            final List<Callable<Integer>> tasks = new ArrayList<>(survivors.size());
+            for (Score score : survivors) {
+                tasks.add(() -> fold.evaluate(withCandidate(parameter, score.candidate, cacheShare)));
+            }
+            final List<Future<Integer>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < survivors.size(); ++i) {
+                survivors.get(i).add(get(results.get(i)), fold.test.length);
+            }
+            if (f < folds - 1) {
+                survivors = new ArrayList<>(survivors);
+                survivors.sort(Comparator.comparingDouble(Score::getAccuracy).reversed());
+                survivors = survivors.subList(0, Math.max(1, (int) Math.ceil(survivors.size() * survivalRate)));
+            }
+        }
+
+        final List<Score> ranked = new ArrayList<>(scores);
+        ranked.sort(Comparator.comparingInt(Score::getFolds).reversed()
+                .thenComparing(Comparator.comparingDouble(Score::getAccuracy).reversed()));
+        return Collections.unmodifiableList(ranked);
+    }
+
+    /**
+     * Trains the final model of a candidate on all the samples
+     */
+    public svm_model train(final svm_problem problem, final svm_parameter parameter, final Candidate candidate) {
+        return new ParallelSvmTrainer(threads, cacheBudget).train(problem, withCandidate(parameter, candidate, cacheBudget));
+    }
+
+    /**
+     * @return one line per score, in the given order
+     */
+    public static String report(final List<Score> scores) {
+        final StringBuilder report = new StringBuilder(String.format("%4s %12s %12s %6s %9s%n", "rank", "C", "gamma", "folds", "accuracy"));
+        for (int i = 0; i < scores.size(); ++i) {
+            final Score score = scores.get(i);
+            report.append(String.format("%4d %12.6g %12.6g %6d %8.3f%%%n", i + 1, score.candidate.getC(),
+                    score.candidate.getGamma(), score.getFolds(), 100 * score.getAccuracy()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Shuffles the sample indices with the seed and cuts them into folds of equal size
+     */
+    private Fold[] split(final svm_problem problem) {
+        final int[] order = new int[problem.l];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        final Random random = new Random(seed);
+        for (int i = order.length - 1; i > 0; --i) {
+            final int j = random.nextInt(i + 1);
+            final int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        final Fold[] split = new Fold[folds];
+        for (int f = 0; f < folds; ++f) {
+            final int from = (int) ((long) problem.l * f / folds);
+            final int to = (int) ((long) problem.l * (f + 1) / folds);
+            split[f] = new Fold(problem, order, from, to);
+        }
+        return split;
+    }
+
+    private static svm_parameter withCandidate(final svm_parameter parameter, final Candidate candidate, final double cacheSize) {
+        final svm_parameter copy = (svm_parameter) parameter.clone();
+        copy.C = candidate.getC();
+        copy.gamma = candidate.getGamma();
+        copy.cache_size = cacheSize;
+        return copy;
+    }
+
+    private static int get(final Future<Integer> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Search failed", e.getCause());
+        }
+    }
+
+    private static double logUniform(final double min, final double max, final Random random) {
+        return Math.exp(Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min)));
+    }
+
+    /**
+     * Training problem without the samples order[from, to), which are held out for testing
+     */
+    private static class Fold {
+        private final svm_problem training;
+        private final svm_node[][] test;
+        private final double[] testLabels;
+
+        private Fold(final svm_problem problem, final int[] order, final int from, final int to) {
+            this.training = new svm_problem();
+            training.l = problem.l - (to - from);
+            training.x = new svm_node[training.l][];
+            training.y = new double[training.l];
+            this.test = new svm_node[to - from][];
+            this.testLabels = new double[to - from];
+            int k = 0;
+            for (int i = 0; i < order.length; ++i) {
+                if (i >= from && i < to) {
+                    test[i - from] = problem.x[order[i]];
+                    testLabels[i - from] = problem.y[order[i]];
+                } else {
+                    training.x[k] = problem.x[order[i]];
+                    training.y[k++] = problem.y[order[i]];
+                }
+            }
+        }
+
+        /**
+         * @return number of held out samples predicted correctly
+         */
+        private int evaluate(final svm_parameter parameter) {
+            final svm_model model = svm.svm_train(training, parameter);
+            int correct = 0;
+            for (int i = 0; i < test.length; ++i) {
+                if (svm.svm_predict(model, test[i]) == testLabels[i]) {
+                    ++correct;
+                }
+            }
+            return correct;
+        }
+    }
+
+    /**
+     * Pair of hyperparameters
+     */
+    public static class Candidate {
+        private final double c;
+        private final double gamma;
+
+        public Candidate(final double c, final double gamma) {
+            if (c <= 0 || gamma <= 0) {
+                throw new IllegalArgumentException("C and gamma must be positive");
+            }
+            this.c = c;
+            this.gamma = gamma;
+        }
+
+        public double getC() {
+            return c;
+        }
+
+        public double getGamma() {
+            return gamma;
+        }
+
+        @Override
+        public String toString() {
+            return "Candidate{C=" + c + ", gamma=" + gamma + '}';
+        }
+    }
+
+    /**
+     * Cross-validation result of a candidate, over the folds it survived
+     */
+    public static class Score {
+        private final Candidate candidate;
+        private int folds;
+        private int correct;
+        private int tested;
+
+        private Score(final Candidate candidate) {
+            this.candidate = candidate;
+        }
+
+        private void add(final int correct, final int tested) {
+            ++this.folds;
+            this.correct += correct;
+            this.tested += tested;
+        }
+
+        public Candidate getCandidate() {
+            return candidate;
+        }
+
+        /**
+         * @return number of folds the candidate was evaluated on
+         */
+        public int getFolds() {
+            return folds;
+        }
+
+        /**
+         * @return fraction of the held out samples of those folds predicted correctly
+         */
+        public double getAccuracy() {
+            return tested == 0 ? 0 : (double) correct / tested;
+        }
+
+        @Override
+        public String toString() {
+            return "Score{" + candidate + ", folds=" + folds + ", accuracy=" + getAccuracy() + '}';
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm_node;
+import libsvm.svm_problem;
+import ro.ubbcluj.cs.io.Dataset;
+
+/**
+ * Sparse libsvm encoding of raw images
+ * <p>
+ * Only the non-zero pixels become nodes, the kernels of libsvm walk the nodes of both vectors, so their cost
+ * is proportional to the number of non-zero pixels rather than to the image size. A pixel is a byte, so there are
+ * only featureCount * 255 distinct nodes: they are created once and shared by every encoded image,
+ * an image costs a single array of references.
+ * <p>
+ * libsvm never modifies the nodes of a problem or of a query, neither must the callers.
+ * Node indices and values are those of TrainingExample.getSvmNodes, the encodings are interchangeable.
+ */
+public class SvmNodeEncoder {
+
+    private static final int LEVELS = 256;
+
+    private final int featureCount;
+
+    /**
+     * nodes[index * LEVELS + pixel] is the node of a pixel at index, null for the zero pixels
+     */
+    private final svm_node[] nodes;
+
+    public SvmNodeEncoder(final int featureCount) {
+        if (featureCount < 1) {
+            throw new IllegalArgumentException("At least one feature is needed");
+        }
+        this.featureCount = featureCount;
+        this.nodes = new svm_node[featureCount * LEVELS];
+        for (int index = 0; index < featureCount; ++index) {
+            for (int pixel = 1; pixel < LEVELS; ++pixel) {
+                final svm_node node = new svm_node();
+                node.index = index;
+                node.value = pixel / 255.0;//min-max normalization
+                nodes[index * LEVELS + pixel] = node;
+            }
+        }
+    }
+
+    public int getFeatureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Encodes the raw pixels [offset, offset + getFeatureCount()) of an image
+     *
+     * @return the shared nodes of the non-zero pixels, by increasing index
+     */
+    public svm_node[] encode(final byte[] pixels, final int offset) {
+        int count = 0;
+        for (int j = 0; j < featureCount; ++j) {
+            if (pixels[offset + j] != 0) {
+                ++count;
+            }
+        }
+        final svm_node[] encoded = new svm_node[count];
+        int k = 0;
+        for (int j = 0; j < featureCount; ++j) {
+            final int pixel = pixels[offset + j] & 0xFF;
+            if (pixel != 0) {
+                encoded[k++] = nodes[j * LEVELS + pixel];
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Encodes a sample of the dataset straight from its raw pixels
+     */
+    public svm_node[] encode(final Dataset dataset, final int sample) {
+        checkFeatureCount(dataset);
+        return encode(dataset.getPixels(), dataset.getPixelOffset(sample));
+    }
+
+    /**
+     * Builds the libsvm problem of the dataset, the labels are the classes
+     */
+    public svm_problem problem(final Dataset dataset) {
+        checkFeatureCount(dataset);
+        final svm_problem problem = new svm_problem();
+        problem.l = dataset.size();
+        problem.x = new svm_node[problem.l][];
+        problem.y = new double[problem.l];
+        for (int i = 0; i < problem.l; ++i) {
+            problem.x[i] = encode(dataset.getPixels(), dataset.getPixelOffset(i));
+            problem.y[i] = dataset.getLabel(i);
+        }
+        return problem;
+    }
+
+    private void checkFeatureCount(final Dataset dataset) {
+        if (dataset.getFeatureCount() != featureCount) {
+            throw new IllegalArgumentException("Expected samples of " + featureCount + " features");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels on the JDK Vector API, using the widest lanes of the CPU
+ * <p>
+ * Dot products keep one partial sum per lane and reduce them once at the end,
+ * which breaks the loop-carried dependency of the scalar sum. Tails are handled with scalar loops.
+ * <p>
+ * Only compiled on JDK 16+ and only loaded when jdk.incubator.vector is resolved, see Kernels.select
+ */
+final class VectorKernels implements Kernels {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public double dot(final double[] a, final int aOffset, final double[] b, final int bOffset, final int length) {
+        DoubleVector sum = DoubleVector.zero(DOUBLES);
+        final int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            final DoubleVector va = DoubleVector.fromArray(DOUBLES, a, aOffset + i);
+            final DoubleVector vb = DoubleVector.fromArray(DOUBLES, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+        double s = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) {
+            s += a[aOffset + i] * b[bOffset + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void axpy(final double alpha, final double[] x, final int xOffset, final double[] y, final int yOffset, final int length) {
+        final DoubleVector factor = DoubleVector.broadcast(DOUBLES, alpha);
+        final int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            final DoubleVector vx = DoubleVector.fromArray(DOUBLES, x, xOffset + i);
+            final DoubleVector vy = DoubleVector.fromArray(DOUBLES, y, yOffset + i);
+            vx.fma(factor, vy).intoArray(y, yOffset + i);
+        }
+        for (; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(final double[] a, final double[] b, final int length) {
+        final int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i).mul(DoubleVector.fromArray(DOUBLES, b, i)).intoArray(a, i);
+        }
+        for (; i < length; ++i) {
+            a[i] *= b[i];
+        }
+    }
+
+    @Override
+    public void sigmoid(final double[] x, final double[] result, final int length) {
+        final int bound = DOUBLES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += DOUBLES.length()) {
+            final DoubleVector exp = DoubleVector.fromArray(DOUBLES, x, i).neg().lanewise(VectorOperators.EXP);
+            DoubleVector.broadcast(DOUBLES, 1.0).div(exp.add(1.0)).intoArray(result, i);
+        }
+        for (; i < length; ++i) {
+            result[i] = 1.0 / (1.0 + Math.exp(-x[i]));
+        }
+    }
+
+    @Override
+    public float dot(final float[] a, final int aOffset, final float[] b, final int bOffset, final int length) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        final int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            final FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            final FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+        float s = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i) {
+            s += a[aOffset + i] * b[bOffset + i];
+        }
+        return s;
+    }
+
+    @Override
+    public void axpy(final float alpha, final float[] x, final int xOffset, final float[] y, final int yOffset, final int length) {
+        final FloatVector factor = FloatVector.broadcast(FLOATS, alpha);
+        final int bound = FLOATS.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += FLOATS.length()) {
+            final FloatVector vx = FloatVector.fromArray(FLOATS, x, xOffset + i);
+            final FloatVector vy = FloatVector.fromArray(FLOATS, y, yOffset + i);
+            vx.fma(factor, vy).intoArray(y, yOffset + i);
+        }
+        for (; i < length; ++i) {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    @Override
+    public String name() {
+        return "vector(" + DOUBLES.length() + "x double, " + FLOATS.length() + "x float)";
+    }
+}
@@ -0,0 +1,119 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CostFunctionTest {
+
+    private static NeuralNetwork network(final NeuralNetworkBuilder.Activation output, final NeuralNetworkBuilder.CostFunction costFunction,
+                                         final NeuralNetworkBuilder.TrainingMode trainingMode) {
+        return new NeuralNetworkBuilder()
+                .havingSizes(3, 4, 3)
+                .withOutputFunction(output)
+                .withCostFunction(costFunction)
+                .withTrainingMode(trainingMode)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .withSeed(21)
+                .build();
+    }
+
+    @Test
+    public void testSoftMaxIsStable() {
+        final double[] x = {1000, 1001, 1002};
+        final double[] result = new ActivationFunction.SoftMax().function(x);
+        final double sum = 1 + Math.exp(1) + Math.exp(2);
+        assertArrayEquals(new double[]{1 / sum, Math.exp(1) / sum, Math.exp(2) / sum}, result, 1e-15);
+    }
+
+    @Test
+    public void testSoftMaxNormalizesEachRow() {
+        final double[] x = {0, 0, 5, -5};
+        final double[] result = new double[4];
+        new ActivationFunction.SoftMax().function(x, result, 2, 2);
+        assertArrayEquals(new double[]{0.5, 0.5, 1 / (1 + Math.exp(-10)), 1 / (1 + Math.exp(10))}, result, 1e-15);
+    }
+
+    /**
+     * The back-propagated gradient must be the derivative of the cost, checked with central differences
+     */
+    @Test
+    public void testGradientMatchesCost() {
+        final Object[][] configurations = {
+                {NeuralNetworkBuilder.Activation.SOFT_MAX, NeuralNetworkBuilder.CostFunction.LOG_LIKELIHOOD},
+                {NeuralNetworkBuilder.Activation.SOFT_MAX, NeuralNetworkBuilder.CostFunction.CROSS_ENTROPY},
+                {NeuralNetworkBuilder.Activation.SIGMOID, NeuralNetworkBuilder.CostFunction.CROSS_ENTROPY},
+                {NeuralNetworkBuilder.Activation.SIGMOID, NeuralNetworkBuilder.CostFunction.MEAN_SQUARED},
+        };
+        final double[][] inputs = {{0.2, 0.9, 0.4}};
+        final double[][] targets = {{0, 1, 0}};
+        for (Object[] configuration : configurations) {
+            for (NeuralNetworkBuilder.TrainingMode trainingMode : NeuralNetworkBuilder.TrainingMode.values()) {
+                final NeuralNetwork neuralNetwork = network((NeuralNetworkBuilder.Activation) configuration[0],
+                        (NeuralNetworkBuilder.CostFunction) configuration[1], trainingMode);
+                final Parameters gradient = neuralNetwork.parameters().emptyCopy();
+                neuralNetwork.computeGradient(inputs, targets, 0, 1, gradient);
+
+                final double[] values = neuralNetwork.parameters().values;
+                final double epsilon = 1e-6;
+                for (int i = 0; i < values.length; ++i) {
+                    final double value = values[i];
+                    values[i] = value + epsilon;
+                    final double plus = neuralNetwork.cost(neuralNetwork.feedForward(inputs[0]), targets[0]);
+                    values[i] = value - epsilon;
+                    final double minus = neuralNetwork.cost(neuralNetwork.feedForward(inputs[0]), targets[0]);
+                    values[i] = value;
+                    assertEquals(configuration[0] + " " + configuration[1] + " " + trainingMode,
+                            (plus - minus) / (2 * epsilon), gradient.values[i], 1e-7);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSoftMaxLearnsIdentity() {
+        final NeuralNetwork neuralNetwork = network(NeuralNetworkBuilder.Activation.SOFT_MAX,
+                NeuralNetworkBuilder.CostFunction.LOG_LIKELIHOOD, NeuralNetworkBuilder.TrainingMode.BATCH);
+        final double[][] inputs = {{1, 0, 0}, {0, 1, 0}, {0, 0, 1}};
+        for (int i = 0; i < 300; ++i) {
+            final Parameters gradient = neuralNetwork.parameters().emptyCopy();
+            neuralNetwork.computeGradient(inputs, inputs, 0, inputs.length, gradient);
+            neuralNetwork.applyGradient(gradient);
+        }
+        for (int i = 0; i < inputs.length; ++i) {
+            final double[] output = neuralNetwork.feedForward(inputs[i]);
+            assertEquals(1, output[0] + output[1] + output[2], 1e-12);
+            assertTrue(output[i] > 0.9);
+        }
+    }
+
+    @Test
+    public void testSinglePrecisionSoftMax() {
+        final NeuralNetwork neuralNetwork = network(NeuralNetworkBuilder.Activation.SOFT_MAX,
+                NeuralNetworkBuilder.CostFunction.CROSS_ENTROPY, NeuralNetworkBuilder.TrainingMode.EXAMPLE);
+        final double[] input = {0.3, 0.1, 0.8};
+        assertArrayEquals(neuralNetwork.feedForward(input), new FloatNeuralNetwork(neuralNetwork).feedForward(input), 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSoftMaxWithMeanSquaredIsRejected() {
+        network(NeuralNetworkBuilder.Activation.SOFT_MAX, NeuralNetworkBuilder.CostFunction.MEAN_SQUARED, NeuralNetworkBuilder.TrainingMode.EXAMPLE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLogLikelihoodWithSigmoidIsRejected() {
+        network(NeuralNetworkBuilder.Activation.SIGMOID, NeuralNetworkBuilder.CostFunction.LOG_LIKELIHOOD, NeuralNetworkBuilder.TrainingMode.EXAMPLE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHiddenSoftMaxIsRejected() {
+        new NeuralNetworkBuilder()
+                .havingSizes(3, 4, 3)
+                .withActivationFunction(NeuralNetworkBuilder.Activation.SOFT_MAX)
+                .withOutputFunction(NeuralNetworkBuilder.Activation.SOFT_MAX)
+                .withCostFunction(NeuralNetworkBuilder.CostFunction.LOG_LIKELIHOOD)
+                .build();
+    }
+}
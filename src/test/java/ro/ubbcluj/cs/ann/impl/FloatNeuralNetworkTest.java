@@ -0,0 +1,71 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import org.junit.Test;
+import ro.ubbcluj.cs.io.Blobs;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FloatNeuralNetworkTest {
+
+    private static NeuralNetworkBuilder builder() {
+        return new NeuralNetworkBuilder()
+                .havingSizes(20, 12, 4)
+                .havingLearningRate(0.1)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .withSeed(5);
+    }
+
+    @Test
+    public void testConversionKeepsOutputs() {
+        final NeuralNetwork neuralNetwork = builder().build();
+        final FloatNeuralNetwork floatNetwork = new FloatNeuralNetwork(neuralNetwork);
+        for (TrainingExample example : Blobs.uniform(new Random(2), 20, 20, 4)) {
+            assertArrayEquals(neuralNetwork.feedForward(example.getFeatures()), floatNetwork.feedForward(example.getFeatures()), 1e-5);
+        }
+    }
+
+    @Test
+    public void testTrainingFollowsDoublePrecision() {
+        final NeuralNetwork neuralNetwork = builder().build();
+        final FloatNeuralNetwork floatNetwork = builder().buildSinglePrecision();
+        final List<TrainingExample> examples = Blobs.uniform(new Random(3), 200, 20, 4);
+        for (int epoch = 0; epoch < 3; ++epoch) {
+            for (int i = 0; i < examples.size(); i += 10) {
+                neuralNetwork.sgd(examples.subList(i, i + 10));
+                floatNetwork.sgd(examples.subList(i, i + 10));
+            }
+        }
+
+        final double[][] features = new double[examples.size()][];
+        int agree = 0;
+        for (int i = 0; i < examples.size(); ++i) {
+            features[i] = examples.get(i).getFeatures();
+            assertArrayEquals(neuralNetwork.feedForward(features[i]), floatNetwork.feedForward(features[i]), 1e-3);
+            if (neuralNetwork.classify(features[i]) == floatNetwork.classify(features[i])) {
+                agree++;
+            }
+        }
+        assertTrue(agree >= examples.size() * 0.95);
+
+        final int[] classes = floatNetwork.classifyBatch(features);
+        for (int i = 0; i < features.length; ++i) {
+            assertEquals(floatNetwork.classify(features[i]), classes[i]);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRejectsOtherOptimizers() {
+        builder().withOptimizer(NeuralNetworkBuilder.Optimizer.ADAM).buildSinglePrecision();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidInput() {
+        builder().buildSinglePrecision().classify(new double[3]);
+    }
+}
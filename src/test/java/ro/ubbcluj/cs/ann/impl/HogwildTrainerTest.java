@@ -0,0 +1,87 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import org.junit.Assume;
+import org.junit.Test;
+import ro.ubbcluj.cs.ann.validation.Validator;
+import ro.ubbcluj.cs.io.Blobs;
+import ro.ubbcluj.cs.io.DigitImageLoadingService;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class HogwildTrainerTest {
+
+    private static final int THREADS = 4;
+    private static final int BATCH_SIZE = 10;
+
+    @Test
+    public void testConvergesLikeSequentialSgd() {
+        final Random random = new Random(11);
+        final double[][] centers = Blobs.centers(random, 4, 20, 1);
+        final List<TrainingExample> training = Blobs.examples(random, centers, 2000, 0.15);
+        final List<TrainingExample> test = Blobs.examples(random, centers, 400, 0.15);
+
+        final NeuralNetwork sequential = network(20, 12, 4);
+        final NeuralNetwork asynchronous = network(20, 12, 4);
+        final HogwildTrainer trainer = new HogwildTrainer(asynchronous, THREADS, BATCH_SIZE);
+        for (int epoch = 0; epoch < 20; ++epoch) {
+            Collections.shuffle(training, random);
+            for (int j = 0; j < training.size(); j += BATCH_SIZE) {
+                sequential.sgd(training.subList(j, Math.min(training.size(), j + BATCH_SIZE)));
+            }
+            trainer.train(training);
+        }
+
+        assertComparable(sequential, asynchronous, test, 0.9);
+    }
+
+    @Test
+    public void testConvergesLikeSequentialSgdOnDigits() throws Exception {
+        Assume.assumeTrue("MNIST images are not bundled", getClass().getResource("/train/trn60k-images-ubyte") != null
+                && getClass().getResource("/test/tst10k-images-ubyte") != null);
+
+        final List<TrainingExample> training = new DigitImageLoadingService("/train/trn60k-labels-ubyte", "/train/trn60k-images-ubyte", 1).loadDigitImages().subList(0, 10000);
+        final List<TrainingExample> test = new DigitImageLoadingService("/test/tst10k-labels-ubyte", "/test/tst10k-images-ubyte", 1).loadDigitImages();
+
+        final NeuralNetwork sequential = network(784, 30, 10);
+        final NeuralNetwork asynchronous = network(784, 30, 10);
+        final HogwildTrainer trainer = new HogwildTrainer(asynchronous, THREADS, BATCH_SIZE);
+        for (int epoch = 0; epoch < 2; ++epoch) {
+            for (int j = 0; j < training.size(); j += BATCH_SIZE) {
+                sequential.sgd(training.subList(j, Math.min(training.size(), j + BATCH_SIZE)));
+            }
+            trainer.train(training);
+        }
+
+        assertComparable(sequential, asynchronous, test, 0.8);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsAdaptiveOptimizers() {
+        new HogwildTrainer(new NeuralNetworkBuilder()
+                .havingSizes(4, 3, 2)
+                .withOptimizer(NeuralNetworkBuilder.Optimizer.ADAM)
+                .build(), THREADS, BATCH_SIZE);
+    }
+
+    private static NeuralNetwork network(final int... sizes) {
+        return new NeuralNetworkBuilder()
+                .havingSizes(sizes)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .withSeed(5)
+                .build();
+    }
+
+    private static void assertComparable(final NeuralNetwork sequential, final NeuralNetwork asynchronous,
+                                         final List<TrainingExample> test, final double minimumAccuracy) {
+        final double sequentialAccuracy = (double) Validator.validateClassification(sequential, test) / test.size();
+        final double asynchronousAccuracy = (double) Validator.validateClassification(asynchronous, test) / test.size();
+        assertTrue("sequential accuracy " + sequentialAccuracy, sequentialAccuracy >= minimumAccuracy);
+        assertTrue("hogwild accuracy " + asynchronousAccuracy + " vs " + sequentialAccuracy,
+                asynchronousAccuracy >= sequentialAccuracy - 0.05);
+    }
+}
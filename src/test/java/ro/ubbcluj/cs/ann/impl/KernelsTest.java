@@ -0,0 +1,77 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class KernelsTest {
+
+    private static final int[] LENGTHS = {0, 1, 3, 7, 8, 17, 64, 100, 785};
+
+    @Test
+    public void testSelect() {
+        assertNotNull(Kernels.select());
+        assertEquals("scalar", new ScalarKernels().name());
+    }
+
+    @Test
+    public void testVectorMatchesScalar() {
+        final Kernels vector = Kernels.vector();
+        Assume.assumeTrue(vector != null);//needs JDK 16+ with --add-modules jdk.incubator.vector
+        final Kernels scalar = new ScalarKernels();
+        final Random random = new Random(11);
+        for (int length : LENGTHS) {
+            final double[] a = random(random, length + 3);
+            final double[] b = random(random, length + 5);
+            assertEquals(scalar.dot(a, 3, b, 5, length), vector.dot(a, 3, b, 5, length), 1e-12 * (length + 1));
+
+            final double[] y1 = b.clone();
+            final double[] y2 = b.clone();
+            scalar.axpy(0.7, a, 2, y1, 4, length);
+            vector.axpy(0.7, a, 2, y2, 4, length);
+            assertArrayEquals(y1, y2, 1e-14);
+
+            final double[] m1 = a.clone();
+            final double[] m2 = a.clone();
+            scalar.multiply(m1, b, length);
+            vector.multiply(m2, b, length);
+            assertArrayEquals(m1, m2, 0);
+
+            final double[] s1 = new double[length];
+            final double[] s2 = new double[length];
+            final double[] x = random(random, length);
+            for (int i = 0; i < length; ++i) {
+                x[i] = 40 * x[i] - 20;
+            }
+            scalar.sigmoid(x, s1, length);
+            vector.sigmoid(x, s2, length);
+            assertArrayEquals(s1, s2, 1e-15);
+
+            final float[] fa = new float[length + 1];
+            final float[] fb = new float[length + 1];
+            for (int i = 0; i <= length; ++i) {
+                fa[i] = (float) a[i];
+                fb[i] = (float) b[i];
+            }
+            assertEquals(scalar.dot(fa, 1, fb, 1, length), vector.dot(fa, 1, fb, 1, length), 1e-5 * (length + 1));
+            final float[] fy1 = fb.clone();
+            final float[] fy2 = fb.clone();
+            scalar.axpy(0.3f, fa, 0, fy1, 1, length);
+            vector.axpy(0.3f, fa, 0, fy2, 1, length);
+            assertArrayEquals(fy1, fy2, 1e-6f);
+        }
+    }
+
+    private static double[] random(final Random random, final int length) {
+        final double[] values = new double[length];
+        for (int i = 0; i < length; ++i) {
+            values[i] = random.nextDouble() - 0.5;
+        }
+        return values;
+    }
+}
@@ -83,6 +83,76 @@ public class MathTest {
         Assert.assertEquals(dot(b, b), 31, 0);
     }
 
+    @Test
+    public void testInPlace() {
+        double[] a = new double[]{1, 2, 3, 4, 1};
+        double[] b = new double[]{-1, -1, 2, 3, 4};
+        addInPlace(a, b);
+        Assert.assertArrayEquals(a, new double[]{0, 1, 5, 7, 5}, 0);
+        multiplyInPlace(a, b);
+        Assert.assertArrayEquals(a, new double[]{0, -1, 10, 21, 20}, 0);
+        axpy(2, b, 1, a, 2, 3);
+        Assert.assertArrayEquals(a, new double[]{0, -1, 8, 25, 26}, 0);
+        Assert.assertEquals(dot(a, 2, b, 2, 3), 8 * 2 + 25 * 3 + 26 * 4, 0);
+    }
+
+    @Test
+    public void testSparse() {
+        double[] x = new double[]{9, 0, 2, 0, 0, -3, 0, 5};
+        double[] a = new double[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        int[] indices = new int[8];
+        Assert.assertEquals(nonZeros(x, 1, 7, indices, 1), 3);
+        Assert.assertArrayEquals(new int[]{0, 1, 4, 6, 0, 0, 0, 0}, indices);
+        Assert.assertEquals(sparseDot(a, 2, x, 1, indices, 1, 3), dot(a, 2, x, 1, 7), 0);
+
+        double[] y = a.clone();
+        sparseAxpy(-0.5, x, 1, indices, 1, 3, y, 3);
+        axpy(-0.5, x, 1, a, 3, 7);
+        Assert.assertArrayEquals(a, y, 0);
+    }
+
+    @Test
+    public void testGemm() {
+        final int m = 70, n = 130, k = 67;
+        final double[][] a = randMatrix(m, k, 0, 1);
+        final double[][] b = randMatrix(k, n, 0, 1);
+        final double[] flatA = new double[m * k], flatAT = new double[k * m];
+        final double[] flatB = new double[k * n], flatBT = new double[n * k];
+        for (int i = 0; i < m; ++i) {
+            for (int p = 0; p < k; ++p) {
+                flatA[i * k + p] = a[i][p];
+                flatAT[p * m + i] = a[i][p];
+            }
+        }
+        for (int p = 0; p < k; ++p) {
+            for (int j = 0; j < n; ++j) {
+                flatB[p * n + j] = b[p][j];
+                flatBT[j * k + p] = b[p][j];
+            }
+        }
+        final double[] expected = new double[m * n];
+        final double[][] bt = transpose(b);
+        for (int i = 0; i < m; ++i) {
+            for (int j = 0; j < n; ++j) {
+                expected[i * n + j] = dot(a[i], bt[j]);
+            }
+        }
+
+        final double[] nt = new double[m * n], nn = new double[m * n], tn = new double[m * n];
+        gemmNT(m, n, k, flatA, 0, flatBT, 0, nt, 0);
+        gemmNN(m, n, k, flatA, 0, flatB, 0, nn, 0);
+        gemmTN(m, n, k, flatAT, 0, flatB, 0, tn, 0);
+        Assert.assertArrayEquals(expected, nt, 1e-9);
+        Assert.assertArrayEquals(expected, nn, 1e-9);
+        Assert.assertArrayEquals(expected, tn, 1e-9);
+    }
+
+    @Test
+    public void testGetResult() {
+        Assert.assertEquals(getResult(new double[]{0.1, 0.9, 0.9, 0.2}), 1);
+        Assert.assertEquals(getResult(new double[]{}), -1);
+    }
+
     @Test
     public void testCopy2d() {
         double[][] a = new double[][]{{1, 2}, {3}, {4, 1}};
@@ -0,0 +1,98 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ModelCheckpointTest {
+
+    private static NeuralNetwork network() {
+        return new NeuralNetworkBuilder()
+                .havingSizes(12, 7, 3)
+                .havingLearningRate(0.05)
+                .withActivationFunction(NeuralNetworkBuilder.Activation.TanH)
+                .withOutputFunction(NeuralNetworkBuilder.Activation.SIGMOID)
+                .withCostFunction(NeuralNetworkBuilder.CostFunction.CROSS_ENTROPY)
+                .withTrainingMode(NeuralNetworkBuilder.TrainingMode.BATCH)
+                .withMomentum(0.9)
+                .withOptimizer(NeuralNetworkBuilder.Optimizer.NESTEROV)
+                .withWeightDecayL2(1e-4)
+                .withSeed(17)
+                .build();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        final NeuralNetwork neuralNetwork = network();
+        final Path file = Files.createTempFile("nn", ".bin");
+        try {
+            ModelCheckpoint.save(neuralNetwork, file);
+            final NeuralNetwork loaded = ModelCheckpoint.load(file);
+
+            assertArrayEquals(neuralNetwork.parameters().values, loaded.parameters().values, 0);
+            assertArrayEquals(neuralNetwork.parameters().sizes(), loaded.parameters().sizes());
+            assertEquals(neuralNetwork.activationFunction().getClass(), loaded.activationFunction().getClass());
+            assertEquals(neuralNetwork.outputFunction().getClass(), loaded.outputFunction().getClass());
+            assertEquals(neuralNetwork.costFunction(), loaded.costFunction());
+            assertEquals(neuralNetwork.trainingMode(), loaded.trainingMode());
+            assertEquals(NeuralNetworkBuilder.Optimizer.NESTEROV, loaded.optimizer());
+            assertEquals(0.05, loaded.learningRate(), 0);
+            assertEquals(0.9, loaded.momentum(), 0);
+            assertEquals(1e-4, loaded.l2(), 0);
+
+            final Random random = new Random(1);
+            final double[] input = new double[12];
+            for (int i = 0; i < input.length; ++i) {
+                input[i] = random.nextDouble();
+            }
+            assertArrayEquals(neuralNetwork.feedForward(input), loaded.feedForward(input), 0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadTruncated() throws IOException {
+        final Path file = Files.createTempFile("nn", ".bin");
+        try {
+            ModelCheckpoint.save(network(), file);
+            final byte[] bytes = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+            ModelCheckpoint.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadCorrupted() throws IOException {
+        final Path file = Files.createTempFile("nn", ".bin");
+        try {
+            ModelCheckpoint.save(network(), file);
+            final byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length - 3] ^= 0x10;
+            Files.write(file, bytes);
+            ModelCheckpoint.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadNotACheckpoint() throws IOException {
+        final Path file = Files.createTempFile("nn", ".bin");
+        try {
+            Files.write(file, new byte[]{1, 2, 3});
+            ModelCheckpoint.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
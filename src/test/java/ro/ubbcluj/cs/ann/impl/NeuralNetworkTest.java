@@ -2,6 +2,7 @@ package ro.ubbcluj.cs.ann.impl;
 
 import org.junit.Test;
 import ro.ubbcluj.cs.ann.validation.Validator;
+import ro.ubbcluj.cs.io.Blobs;
 import ro.ubbcluj.cs.io.TrainingExample;
 
 import java.lang.reflect.Field;
@@ -9,14 +10,25 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * @author Mihai Teletin
  */
 public class NeuralNetworkTest {
 
+    /**
+     * Paths that only differ in summation order agree up to rounding, the SIMD kernels accumulate lane by lane
+     */
+    private static final double ROUNDING = 1e-12;
 
     @Test
     public void testBackPropagationOnIdentity() {
@@ -55,47 +67,210 @@ public class NeuralNetworkTest {
     public void testFeedForward() throws Exception {
         final NeuralNetwork neuralNetwork = new NeuralNetwork(2, 1, 2);
         double[] testIn = new double[]{21, 1.5};
-        final List<double[]> activations = new ArrayList<>();
-        final List<double[]> zs = new ArrayList<>();
 
-        Field b = neuralNetwork.getClass().getDeclaredField("biases");
-        b.setAccessible(true);
-        double[][] biases = (double[][]) b.get(neuralNetwork);
-
-        Field w = neuralNetwork.getClass().getDeclaredField("weights");
-        w.setAccessible(true);
-        double[][][] weights = (double[][][]) w.get(neuralNetwork);
+        Field p = neuralNetwork.getClass().getDeclaredField("parameters");
+        p.setAccessible(true);
+        final Parameters parameters = (Parameters) p.get(neuralNetwork);
+        final double[] values = parameters.values;
 
         Field f = neuralNetwork.getClass().getDeclaredField("activationFunction");
         f.setAccessible(true);
         ActivationFunction activationFunction = (ActivationFunction) f.get(neuralNetwork);
 
-        Method feedForward = neuralNetwork.getClass().getDeclaredMethod("feedForward", double[].class, List.class, List.class);
+        Method feedForward = neuralNetwork.getClass().getDeclaredMethod("feedForward", double[].class, Workspace.class);
 
-        final double x = biases[0][0] + weights[0][0][0] * testIn[0] + weights[0][0][1] * testIn[1];
+        final double x = values[parameters.biasIndex(0, 0)] + values[parameters.weightIndex(0, 0, 0)] * testIn[0] + values[parameters.weightIndex(0, 0, 1)] * testIn[1];
         final double rez1 = activationFunction.function(x);
-        final double x1 = biases[1][0] + weights[1][0][0] * rez1;
-        final double x2 = biases[1][1] + weights[1][1][0] * rez1;
+        final double x1 = values[parameters.biasIndex(1, 0)] + values[parameters.weightIndex(1, 0, 0)] * rez1;
+        final double x2 = values[parameters.biasIndex(1, 1)] + values[parameters.weightIndex(1, 1, 0)] * rez1;
 
 
         feedForward.setAccessible(true);
 
-        final double[] result = (double[]) feedForward.invoke(neuralNetwork, testIn, activations, zs);
+        final Workspace workspace = new Workspace(parameters);
+        final double[] result = (double[]) feedForward.invoke(neuralNetwork, testIn, workspace);
+        final double[][] activations = workspace.activations;
+        final double[][] zs = workspace.zs;
 
 
         assertEquals(activationFunction.function(x1), result[0], 0.001);
         assertEquals(activationFunction.function(x2), result[1], 0.001);
-        assertEquals(testIn[0], activations.get(0)[0], 0.001);
-        assertEquals(testIn[1], activations.get(0)[1], 0.001);
-        assertEquals(rez1, activations.get(1)[0], 0.001);
-        assertEquals(activationFunction.function(x1), activations.get(2)[0], 0.001);
-        assertEquals(activationFunction.function(x2), activations.get(2)[1], 0.001);
-        assertEquals(result[0], activations.get(2)[0], 0.001);
-        assertEquals(result[1], activations.get(2)[1], 0.001);
-        assertEquals(x, zs.get(0)[0], 0.001);
-        assertEquals(x1, zs.get(1)[0], 0.001);
-        assertEquals(x2, zs.get(1)[1], 0.001);
+        assertEquals(testIn[0], activations[0][0], 0.001);
+        assertEquals(testIn[1], activations[0][1], 0.001);
+        assertEquals(rez1, activations[1][0], 0.001);
+        assertEquals(activationFunction.function(x1), activations[2][0], 0.001);
+        assertEquals(activationFunction.function(x2), activations[2][1], 0.001);
+        assertEquals(result[0], activations[2][0], 0.001);
+        assertEquals(result[1], activations[2][1], 0.001);
+        assertEquals(x, zs[0][0], 0.001);
+        assertEquals(x1, zs[1][0], 0.001);
+        assertEquals(x2, zs[1][1], 0.001);
+
+    }
+
+    @Test
+    public void testBatchTrainingMatchesExampleTraining() {
+        final NeuralNetwork example = new NeuralNetworkBuilder()
+                .havingSizes(70, 90, 13, 4)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .build();
+        final NeuralNetwork batched = new NeuralNetworkBuilder()
+                .havingSizes(70, 90, 13, 4)
+                .withTrainingMode(NeuralNetworkBuilder.TrainingMode.BATCH)
+                .build();
+        batched.parameters().copyFrom(example.parameters());
+
+        final List<TrainingExample> batch = Blobs.uniform(new Random(7), 67, 70, 4);
+
+        for (int i = 0; i < 3; ++i) {
+            example.sgd(batch);
+            batched.sgd(batch);
+            batched.sgd(batch.subList(0, 5));
+            example.sgd(batch.subList(0, 5));
+        }
+        assertArrayEquals(example.parameters().values, batched.parameters().values, ROUNDING);
+    }
+
+    @Test
+    public void testParallelTrainingIsReproducible() {
+        final List<TrainingExample> batch = Blobs.uniform(new Random(3), 150, 30, 5);
+        double[] reference = null;
+        for (NeuralNetworkBuilder.TrainingMode mode : NeuralNetworkBuilder.TrainingMode.values()) {
+            double[] expected = null;
+            for (int threads = 1; threads <= 4; ++threads) {
+                final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+                        .havingSizes(30, 20, 5)
+                        .withSeed(42)
+                        .withThreads(threads)
+                        .withTrainingMode(mode)
+                        .build();
+                for (int i = 0; i < 4; ++i) {
+                    neuralNetwork.sgd(batch);
+                }
+                if (expected == null) {
+                    expected = neuralNetwork.parameters().values;
+                }
+                assertArrayEquals(expected, neuralNetwork.parameters().values, 0);//same whatever the number of threads
+            }
+            if (reference == null) {
+                reference = expected;
+            }
+            assertArrayEquals(reference, expected, ROUNDING);
+        }
+    }
+
+    @Test
+    public void testClosedNetworkRunsOnCallingThread() {
+        final List<TrainingExample> batch = Blobs.uniform(new Random(4), 100, 30, 5);
+        final NeuralNetworkBuilder builder = new NeuralNetworkBuilder().havingSizes(30, 20, 5).withSeed(8);
+        final NeuralNetwork sequential = builder.build();
+        final ForkJoinPool shared = new ForkJoinPool(3);
+        try {
+            final NeuralNetwork pooled = builder.withPool(shared).build();
+            pooled.close();//the shared pool belongs to the caller
+            assertFalse(shared.isShutdown());
+
+            final NeuralNetwork owner = builder.withPool(null).withThreads(3).build();
+            final NeuralNetwork copy = new NeuralNetwork(owner);
+            owner.close();
+            for (NeuralNetwork neuralNetwork : Arrays.asList(pooled, owner, copy)) {
+                neuralNetwork.sgd(batch);
+            }
+            sequential.sgd(batch);
+            for (NeuralNetwork neuralNetwork : Arrays.asList(pooled, owner, copy)) {
+                assertArrayEquals(sequential.parameters().values, neuralNetwork.parameters().values, 0);
+            }
+        } finally {
+            shared.shutdown();
+        }
+    }
+
+    @Test
+    public void testBatchInferenceMatchesSingleSample() throws Exception {
+        final List<TrainingExample> examples = Blobs.uniform(new Random(9), 300, 30, 5);
+        final double[][] inputs = new double[examples.size()][];
+        for (int i = 0; i < inputs.length; ++i) {
+            inputs[i] = examples.get(i).getFeatures();
+        }
+        final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+                .havingSizes(30, 20, 5)
+                .withThreads(3)
+                .build();
+
+        final double[][] predictions = neuralNetwork.predictBatch(inputs);
+        final int[] classes = neuralNetwork.classifyBatch(inputs);
+        for (int i = 0; i < inputs.length; ++i) {
+            assertArrayEquals(neuralNetwork.feedForward(inputs[i]), predictions[i], 1e-12);
+            assertEquals(neuralNetwork.classify(inputs[i]), classes[i]);
+        }
+
+        final ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<int[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                results.add(callers.submit(() -> neuralNetwork.classifyBatch(inputs)));
+            }
+            for (Future<int[]> result : results) {
+                assertArrayEquals(classes, result.get());
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void testSparseInputsMatchDenseInputs() {
+        final Random random = new Random(11);
+        final List<TrainingExample> batch = Blobs.uniform(random, 40, 50, 4);
+        for (int i = 0; i < batch.size(); i += 2) {
+            final double[] features = batch.get(i).getFeatures();
+            for (int j = 0; j < features.length; ++j) {
+                if (random.nextDouble() < 0.9) {
+                    features[j] = 0;
+                }
+            }
+        }
+        final double[][] inputs = new double[batch.size()][];
+        final double[][] targets = new double[batch.size()][];
+        for (int i = 0; i < inputs.length; ++i) {
+            inputs[i] = batch.get(i).getFeatures();
+            targets[i] = batch.get(i).getTargetValue();
+        }
+
+        final double delta = "scalar".equals(MathUtils.kernels()) ? 0 : ROUNDING;//exact unless the SIMD kernels reorder the sums
+        final List<Parameters> gradients = new ArrayList<>();
+        for (NeuralNetworkBuilder.TrainingMode mode : NeuralNetworkBuilder.TrainingMode.values()) {
+            final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+                    .havingSizes(50, 20, 4)
+                    .withSeed(5)
+                    .withTrainingMode(mode)
+                    .build();
+            final Parameters gradient = new Parameters(neuralNetwork.parameters().sizes());
+            neuralNetwork.computeGradient(inputs, targets, 0, inputs.length, gradient);
+            gradients.add(gradient);
+
+            final double[][] predictions = neuralNetwork.predictBatch(inputs);
+            for (int i = 0; i < inputs.length; ++i) {
+                assertArrayEquals(neuralNetwork.feedForward(inputs[i]), predictions[i], delta);
+            }
+        }
+        assertArrayEquals(gradients.get(0).values, gradients.get(1).values, delta);
+    }
+
+    @Test
+    public void testParametersLayout() {
+        final Parameters parameters = new Parameters(3, 2, 4);
+        assertEquals(3 * 2 + 2 + 2 * 4 + 4, parameters.size());
+        assertEquals(0, parameters.weightOffset(0));
+        assertEquals(6, parameters.biasOffset(0));
+        assertEquals(8, parameters.weightOffset(1));
+        assertEquals(16, parameters.biasOffset(1));
+        assertEquals(8 + 3 * 2 + 1, parameters.weightIndex(1, 3, 1));
 
+        parameters.values[parameters.biasIndex(1, 3)] = 2;
+        final Parameters copy = new Parameters(parameters);
+        parameters.values[parameters.biasIndex(1, 3)] = 5;
+        assertEquals(2, copy.values[copy.biasIndex(1, 3)], 0);
     }
 
 
@@ -0,0 +1,61 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import org.junit.Test;
+import ro.ubbcluj.cs.io.Blobs;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuantizedNeuralNetworkTest {
+
+    @Test
+    public void testMatchesDoubleNetwork() {
+        final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+                .havingSizes(64, 32, 4)
+                .withActivationFunction(NeuralNetworkBuilder.Activation.TanH)
+                .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                .withSeed(5)
+                .build();
+        final QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(neuralNetwork, Blobs.uniform(new Random(1), 200, 64, 4));
+
+        int agreements = 0;
+        final List<TrainingExample> testData = Blobs.uniform(new Random(2), 500, 64, 4);
+        for (TrainingExample example : testData) {
+            assertArrayEquals(neuralNetwork.feedForward(example.getFeatures()), quantized.feedForward(example.getFeatures()), 0.05);
+            if (neuralNetwork.classify(example.getFeatures()) == quantized.classify(example.getFeatures())) {
+                agreements++;
+            }
+        }
+        assertTrue(agreements >= 0.95 * testData.size());
+    }
+
+    @Test
+    public void testFootprint() {
+        final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+                .havingSizes(784, 50, 10)
+                .withSeed(5)
+                .build();
+        final QuantizedNeuralNetwork quantized = new QuantizedNeuralNetwork(neuralNetwork, Blobs.uniform(new Random(1), 1, 784, 4));
+        assertEquals(((784 + 1) * 50 + (50 + 1) * 10) * 8, quantized.getSourceParameterBytes());
+        assertTrue(quantized.getSourceParameterBytes() > 7.5 * quantized.getParameterBytes());
+    }
+
+    @Test
+    public void testInt8Dot() {
+        final byte[] a = {127, -127, 3, 5, -7};
+        final byte[] b = {127, 127, -2, 4, 1};
+        assertEquals(127 * 127 - 127 * 127 - 6 + 20 - 7, MathUtils.dot(a, 0, b, 0, a.length));
+        assertEquals(-6 + 20, MathUtils.dot(a, 2, b, 2, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyCalibration() {
+        new QuantizedNeuralNetwork(new NeuralNetworkBuilder().havingSizes(3, 2).build(), Collections.<TrainingExample>emptyList());
+    }
+}
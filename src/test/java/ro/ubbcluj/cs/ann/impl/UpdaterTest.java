@@ -0,0 +1,141 @@
+package ro.ubbcluj.cs.ann.impl;
+
+import org.junit.Test;
+import ro.ubbcluj.cs.ann.validation.Validator;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UpdaterTest {
+
+    @Test
+    public void testMomentum() {
+        final Updater updater = new Updater.Momentum(0.5, 1);
+        final double[] w = {1};
+        updater.update(w, new double[]{2}, 0, w.length, 0.1, 0);//v = -0.2
+        assertEquals(0.8, w[0], 1e-12);
+        updater.update(w, new double[]{2}, 0, w.length, 0.1, 0);//v = -0.1 - 0.2
+        assertEquals(0.5, w[0], 1e-12);
+    }
+
+    @Test
+    public void testNesterov() {
+        final Updater updater = new Updater.Nesterov(0.5, 1);
+        final double[] w = {1};
+        updater.update(w, new double[]{2}, 0, w.length, 0.1, 0);//v = -0.2, w += 1.5 * v
+        assertEquals(0.7, w[0], 1e-12);
+        updater.update(w, new double[]{2}, 0, w.length, 0.1, 0);//v = -0.3, w += 1.5 * v - 0.5 * -0.2
+        assertEquals(0.35, w[0], 1e-12);
+    }
+
+    @Test
+    public void testAdamFirstStepIsLearningRate() {
+        final Updater updater = new Updater.Adam(2);
+        final Parameters parameters = new Parameters(1, 1);//one weight and one bias
+        parameters.values[0] = 1;
+        parameters.values[1] = 1;
+        updater.update(parameters, new double[]{5, -0.01}, 0.1, 0);
+        assertArrayEquals(new double[]{0.9, 1.1}, parameters.values, 1e-5);
+    }
+
+    @Test
+    public void testRmsProp() {
+        final Updater updater = new Updater.RmsProp(1);
+        final double[] w = {1};
+        updater.update(w, new double[]{2}, 0, w.length, 0.1, 0);//mean = 0.4
+        assertEquals(1 - 0.1 * 2 / Math.sqrt(0.4), w[0], 1e-7);
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        final Updater updater = new Updater.Momentum(0.9, 1);
+        final double[] w = {0};
+        updater.update(w, new double[]{1}, 0, w.length, 1, 0);
+        final Updater copy = updater.copy();
+        final double[] a = {0};
+        final double[] b = {0};
+        updater.update(a, new double[]{0}, 0, a.length, 1, 0);
+        copy.update(b, new double[]{0}, 0, b.length, 1, 0);
+        copy.update(b, new double[]{0}, 0, b.length, 1, 0);
+        assertEquals(-0.9, a[0], 1e-12);
+        assertEquals(-0.9 - 0.81, b[0], 1e-12);
+    }
+
+    /**
+     * One mini-batch step against w - eta * (g + l2 * w) for the weights and b - eta * g for the biases,
+     * with g the gradient computed by back-propagation
+     */
+    @Test
+    public void testWeightDecayMatchesTextbook() {
+        final double eta = 0.1;
+        final double l2 = 0.01;
+        final NeuralNetworkBuilder builder = new NeuralNetworkBuilder()
+                .havingSizes(4, 3, 2)
+                .havingLearningRate(eta)
+                .withWeightDecayL2(l2)
+                .withSeed(3);
+        final NeuralNetwork neuralNetwork = builder.build();
+        final double[][] inputs = {{0.1, 0.5, 0.9, 0.2}, {0.7, 0.3, 0.0, 1.0}};
+        final double[][] targets = {{1, 0}, {0, 1}};
+
+        final Parameters before = new Parameters(neuralNetwork.parameters());
+        final Parameters gradient = before.emptyCopy();
+        neuralNetwork.computeGradient(inputs, targets, 0, inputs.length, gradient);
+        neuralNetwork.sgd(Arrays.asList(new TrainingExample(inputs[0], targets[0]), new TrainingExample(inputs[1], targets[1])));
+
+        final double[] expected = before.values.clone();
+        for (int layer = 0; layer < before.layers(); ++layer) {
+            for (int j = 0; j < before.rows(layer); ++j) {
+                for (int k = 0; k < before.columns(layer); ++k) {
+                    final int i = before.weightIndex(layer, j, k);
+                    expected[i] = before.values[i] - eta * (gradient.values[i] + l2 * before.values[i]);
+                }
+                final int b = before.biasIndex(layer, j);
+                expected[b] = before.values[b] - eta * gradient.values[b];
+            }
+        }
+        assertArrayEquals(expected, neuralNetwork.parameters().values, 1e-15);
+    }
+
+    @Test
+    public void testWeightDecayShrinksWeightsWithoutGradient() {
+        final Updater updater = new Updater.Momentum(0.5, 2);
+        final Parameters parameters = new Parameters(1, 1);
+        parameters.values[0] = 2;//weight
+        parameters.values[1] = 2;//bias
+        updater.update(parameters, new double[2], 0.1, 0.5);
+        assertArrayEquals(new double[]{2 - 0.1 * 0.5 * 2, 2}, parameters.values, 1e-15);
+    }
+
+    @Test
+    public void testEveryOptimizerLearnsIdentity() {
+        final TrainingExample t1 = new TrainingExample(new double[]{1.0, 0.0, 0.0}, new double[]{1.0, 0.0, 0.0});
+        final TrainingExample t2 = new TrainingExample(new double[]{0.0, 1.0, 0.0}, new double[]{0.0, 1.0, 0.0});
+        final TrainingExample t3 = new TrainingExample(new double[]{0.0, 0.0, 1.0}, new double[]{0.0, 0.0, 1.0});
+        final List<TrainingExample> list = Arrays.asList(t1, t2, t3);
+        for (NeuralNetworkBuilder.Optimizer optimizer : NeuralNetworkBuilder.Optimizer.values()) {
+            final boolean adaptive = optimizer == NeuralNetworkBuilder.Optimizer.ADAM || optimizer == NeuralNetworkBuilder.Optimizer.RMS_PROP;
+            final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+                    .havingSizes(3, 5, 3)
+                    .havingLearningRate(adaptive ? 0.01 : 0.3)
+                    .withMomentum(0.9)
+                    .withOptimizer(optimizer)
+                    .withWeightsInitialization(NeuralNetworkBuilder.WeightsInitialization.XAVIER)
+                    .withSeed(7)
+                    .build();
+            for (int i = 0; i < 1000; ++i) {
+                neuralNetwork.sgd(list);
+            }
+            assertEquals(optimizer.name(), list.size(), Validator.validateClassification(neuralNetwork, list));
+            for (TrainingExample example : list) {
+                final double[] output = neuralNetwork.feedForward(example.getFeatures());
+                assertTrue(optimizer.name(), output[example.getClazz()] > 0.5);
+            }
+        }
+    }
+}
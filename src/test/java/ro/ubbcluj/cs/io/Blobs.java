@@ -0,0 +1,65 @@
+package ro.ubbcluj.cs.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random samples shared by the tests of the learners: Gaussian clusters around class centers or uniform noise
+ */
+public final class Blobs {
+
+    private Blobs() {
+    }
+
+    /**
+     * @return one center per class, drawn uniformly from [0, scale) in every feature
+     */
+    public static double[][] centers(final Random random, final int classes, final int features, final double scale) {
+        final double[][] centers = new double[classes][features];
+        for (double[] center : centers) {
+            for (int j = 0; j < features; ++j) {
+                center[j] = random.nextDouble() * scale;
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * Sample i belongs to class i % centers.length, each feature is its center's plus Gaussian noise
+     *
+     * @param deviation standard deviation of the noise
+     */
+    public static List<TrainingExample> examples(final Random random, final double[][] centers, final int count,
+                                                 final double deviation) {
+        final List<TrainingExample> examples = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            final int clazz = i % centers.length;
+            final double[] features = new double[centers[clazz].length];
+            for (int j = 0; j < features.length; ++j) {
+                features[j] = centers[clazz][j] + random.nextGaussian() * deviation;
+            }
+            final double[] target = new double[centers.length];
+            target[clazz] = 1;
+            examples.add(new TrainingExample(features, target));
+        }
+        return examples;
+    }
+
+    /**
+     * Features uniform in [0, 1) with a random one-hot target, nothing to learn
+     */
+    public static List<TrainingExample> uniform(final Random random, final int count, final int inputs, final int classes) {
+        final List<TrainingExample> examples = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            final double[] features = new double[inputs];
+            for (int j = 0; j < features.length; ++j) {
+                features[j] = random.nextDouble();
+            }
+            final double[] target = new double[classes];
+            target[random.nextInt(classes)] = 1;
+            examples.add(new TrainingExample(features, target));
+        }
+        return examples;
+    }
+}
@@ -0,0 +1,108 @@
+package ro.ubbcluj.cs.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static ro.ubbcluj.cs.io.MappedDigitImagesTest.deleteAll;
+
+public class CheckpointWriterTest {
+
+    private static void writeText(final String snapshot, final Path file) throws IOException {
+        Files.write(file, snapshot.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRetainsLastCheckpoints() throws IOException {
+        final Path directory = Files.createTempDirectory("checkpoints");
+        try {
+            final CheckpointWriter<String> writer = new CheckpointWriter<>(directory, "model", ".txt", 2, CheckpointWriterTest::writeText);
+            for (int i = 1; i <= 5; ++i) {
+                writer.submit("snapshot " + i);
+                writer.flush();
+            }
+            writer.close();
+
+            assertEquals("snapshot 5", new String(Files.readAllBytes(writer.latest()), StandardCharsets.UTF_8));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.count());
+            }
+            assertTrue(Files.exists(directory.resolve("model-4.txt")));
+            assertTrue(Files.exists(directory.resolve("model-5.txt")));
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testContinuesAfterExistingCheckpoints() throws IOException {
+        final Path directory = Files.createTempDirectory("checkpoints");
+        try {
+            writeText("old 9", directory.resolve("model-9.txt"));
+            writeText("old 10", directory.resolve("model-10.txt"));
+            writeText("other", directory.resolve("model-x.txt"));
+            final CheckpointWriter<String> writer = new CheckpointWriter<>(directory, "model", ".txt", 2, CheckpointWriterTest::writeText);
+            writer.submit("new");
+            writer.close();
+
+            assertEquals(directory.resolve("model-11.txt"), writer.latest());
+            assertTrue(Files.notExists(directory.resolve("model-9.txt")));
+            assertTrue(Files.exists(directory.resolve("model-10.txt")));
+            assertTrue(Files.exists(directory.resolve("model-x.txt")));
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void testSubmitDoesNotWaitForTheDisk() throws Exception {
+        final Path directory = Files.createTempDirectory("checkpoints");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final CheckpointWriter<String> writer = new CheckpointWriter<>(directory, "model", ".txt", 3, (snapshot, file) -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                writeText(snapshot, file);
+            });
+            writer.submit("first");
+            started.await();
+            writer.submit("second");//the writer is blocked, these return at once
+            writer.submit("third");
+            release.countDown();
+            writer.close();
+
+            assertEquals("third", new String(Files.readAllBytes(writer.latest()), StandardCharsets.UTF_8));
+            try (Stream<Path> files = Files.list(directory)) {
+                assertEquals(2, files.count());//second was superseded, no temporary file is left
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCloseReportsFailure() throws IOException {
+        final Path directory = Files.createTempDirectory("checkpoints");
+        try {
+            final CheckpointWriter<String> writer = new CheckpointWriter<>(directory, "model", ".txt", 1, (snapshot, file) -> {
+                throw new IOException("disk full");
+            });
+            writer.submit("snapshot");
+            writer.close();
+        } finally {
+            deleteAll(directory);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ro.ubbcluj.cs.io;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DatasetTest {
+
+    private static Dataset dataset() {
+        final byte[] pixels = {0, (byte) 255, 51, 0, 102, (byte) 204, 1, 2, 3, 4, 5, 6};
+        final byte[] labels = {2, 0, 1, 2};
+        return new Dataset(pixels, labels, 3, 3, 1);
+    }
+
+    @Test
+    public void testDecode() {
+        final Dataset dataset = dataset();
+        assertEquals(4, dataset.size());
+        final double[] features = new double[3];
+        dataset.getFeatures(0, features);
+        assertArrayEquals(new double[]{0, 1, 0.2}, features, 1e-12);
+        final double[] target = new double[3];
+        dataset.getTarget(1, target);
+        assertArrayEquals(new double[]{1, 0, 0}, target, 0);
+        assertEquals(2, dataset.getTrainingExample(3).getClazz());
+    }
+
+    @Test
+    public void testShuffleAndSubset() {
+        final Dataset dataset = dataset();
+        final Dataset tail = dataset.subset(1, 4);
+        assertEquals(3, tail.size());
+        assertEquals(0, tail.getLabel(0));
+        assertEquals(6, tail.getPixelOffset(1));
+
+        tail.shuffle(new Random(1));
+        assertEquals(2, dataset.getLabel(0));
+        final int[] labels = {tail.getLabel(0), tail.getLabel(1), tail.getLabel(2)};
+        Arrays.sort(labels);
+        assertArrayEquals(new int[]{0, 1, 2}, labels);
+        for (int i = 0; i < tail.size(); ++i) {
+            assertEquals(dataset.getLabel(i + 1), tail.getLabel(i));
+        }
+    }
+
+    @Test
+    public void testFill() {
+        final Dataset dataset = dataset();
+        final MiniBatch batch = new MiniBatch(3, 3, 3);
+        dataset.fill(batch, 2, 4);
+        assertEquals(2, batch.size());
+        assertArrayEquals(new double[]{1 / 255.0, 2 / 255.0, 3 / 255.0}, batch.getFeatures()[0], 1e-12);
+        assertArrayEquals(new double[]{0, 0, 1}, batch.getTargets()[1], 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSubsetOutOfRange() {
+        dataset().subset(2, 1).size();
+    }
+}
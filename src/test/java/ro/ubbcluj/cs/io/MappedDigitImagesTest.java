@@ -0,0 +1,120 @@
+package ro.ubbcluj.cs.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedDigitImagesTest {
+
+    @Test
+    public void testMapDigitImages() throws IOException {
+        final byte[][] images = {{0, 1, (byte) 255, 0, 0, 51}, {(byte) 128, 0, 0, 0, 2, 0}, {0, 0, 0, 0, 0, 0}};
+        final int[] labels = {7, 0, 2};
+        final Path directory = Files.createTempDirectory("idx");
+        try {
+            final Path labelFile = writeLabels(directory.resolve("labels"), labels);
+            final Path imageFile = writeImages(directory.resolve("images"), 2, 3, images);
+
+            final MappedDigitImages mapped = MappedDigitImages.map(labelFile, imageFile);
+            assertEquals(3, mapped.size());
+            assertEquals(6, mapped.getImageSize());
+            assertEquals(7, mapped.getLabel(0));
+            assertEquals(2, mapped.getLabel(2));
+            assertEquals(255, mapped.getPixel(0, 2));
+            assertEquals(128, mapped.getPixel(1, 0));
+
+            final byte[] pixels = new byte[6];
+            mapped.getPixels(1, pixels);
+            assertArrayEquals(images[1], pixels);
+
+            final double[] features = new double[6];
+            mapped.getFeatures(0, features);
+            assertArrayEquals(new double[]{0, 1 / 255.0, 1, 0, 0, 0.2}, features, 1e-12);
+
+            final List<TrainingExample> examples = mapped.asTrainingExamples(1, 10);
+            assertEquals(3, examples.size());
+            assertEquals(7, examples.get(0).getClazz());
+            assertArrayEquals(features, examples.get(0).getFeatures(), 0);
+
+            final Dataset tail = Dataset.copyOf(mapped, 1, 3, 1, 10);
+            assertEquals(2, tail.size());
+            assertEquals(0, tail.getTrainingExample(0).getClazz());
+            assertEquals(128, tail.getPixels()[tail.getPixelOffset(0)] & 0xFF);
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMapBadMagic() throws IOException {
+        final Path directory = Files.createTempDirectory("idx");
+        try {
+            final Path labelFile = writeLabels(directory.resolve("labels"), new int[]{1});
+            MappedDigitImages.map(labelFile, labelFile);
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMapTruncated() throws IOException {
+        final Path directory = Files.createTempDirectory("idx");
+        try {
+            final Path labelFile = writeLabels(directory.resolve("labels"), new int[]{1, 2});
+            final Path imageFile = writeImages(directory.resolve("images"), 2, 2, new byte[][]{{1, 2, 3, 4}});
+            final ByteBuffer header = ByteBuffer.allocate(16).putInt(2051).putInt(2).putInt(2).putInt(2);
+            Files.write(imageFile, header.array());
+            MappedDigitImages.map(labelFile, imageFile);
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testPixelOutOfImage() throws IOException {
+        final byte[] labels = ByteBuffer.allocate(10).putInt(2049).putInt(2).array();
+        final byte[] images = ByteBuffer.allocate(16 + 8).putInt(2051).putInt(2).putInt(2).putInt(2).array();
+        MappedDigitImages.wrap(labels, images).getPixel(0, 4);//would be the first pixel of the second image
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrapNegativeCount() throws IOException {
+        final byte[] labels = ByteBuffer.allocate(8).putInt(2049).putInt(-1).array();
+        final byte[] images = ByteBuffer.allocate(16).putInt(2051).putInt(-1).putInt(2).putInt(2).array();
+        MappedDigitImages.wrap(labels, images);
+    }
+
+    static Path writeLabels(final Path file, final int[] labels) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + labels.length).putInt(2049).putInt(labels.length);
+        for (int label : labels) {
+            buffer.put((byte) label);
+        }
+        return Files.write(file, buffer.array());
+    }
+
+    static Path writeImages(final Path file, final int rows, final int columns, final byte[][] images) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(16 + images.length * rows * columns)
+                .putInt(2051).putInt(images.length).putInt(rows).putInt(columns);
+        for (byte[] image : images) {
+            buffer.put(image);
+        }
+        return Files.write(file, buffer.array());
+    }
+
+    static void deleteAll(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,115 @@
+package ro.ubbcluj.cs.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static ro.ubbcluj.cs.io.MappedDigitImagesTest.deleteAll;
+import static ro.ubbcluj.cs.io.MappedDigitImagesTest.writeImages;
+import static ro.ubbcluj.cs.io.MappedDigitImagesTest.writeLabels;
+
+public class StreamingBatchSourceTest {
+
+    private static final int SAMPLES = 23;
+    private static final int ROWS = 3;
+    private static final int COLUMNS = 4;
+    private static final int CLASSES = 10;
+
+    @Test
+    public void testStreamMatchesMapping() throws IOException {
+        checkStream(false);
+    }
+
+    @Test
+    public void testStreamGzip() throws IOException {
+        checkStream(true);
+    }
+
+    private void checkStream(final boolean gzip) throws IOException {
+        final Random random = new Random(9);
+        final byte[][] images = new byte[SAMPLES][ROWS * COLUMNS];
+        final int[] labels = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; ++i) {
+            random.nextBytes(images[i]);
+            labels[i] = random.nextInt(CLASSES);
+        }
+        final Path directory = Files.createTempDirectory("idx");
+        try {
+            Path labelFile = writeLabels(directory.resolve("labels"), labels);
+            Path imageFile = writeImages(directory.resolve("images"), ROWS, COLUMNS, images);
+            final Dataset expected = Dataset.copyOf(MappedDigitImages.map(labelFile, imageFile), 1, CLASSES);
+            if (gzip) {
+                labelFile = gzip(labelFile);
+                imageFile = gzip(imageFile);
+            }
+
+            final MiniBatch reference = new MiniBatch(5, ROWS * COLUMNS, CLASSES);
+            try (StreamingBatchSource source = StreamingBatchSource.open(labelFile, imageFile, 5, 2, CLASSES, 1)) {
+                assertEquals(SAMPLES, source.size());
+                int seen = 0;
+                MiniBatch batch;
+                while ((batch = source.next()) != null) {
+                    assertEquals(Math.min(5, SAMPLES - seen), batch.size());
+                    expected.fill(reference, seen, seen + batch.size());
+                    for (int i = 0; i < batch.size(); ++i) {
+                        assertArrayEquals(reference.getFeatures()[i], batch.getFeatures()[i], 0);
+                        assertArrayEquals(reference.getTargets()[i], batch.getTargets()[i], 0);
+                    }
+                    seen += batch.size();
+                    source.release(batch);
+                }
+                assertEquals(SAMPLES, seen);
+                assertNull(source.next());
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testStreamTruncated() throws IOException {
+        final Path directory = Files.createTempDirectory("idx");
+        try {
+            final Path labelFile = writeLabels(directory.resolve("labels"), new int[]{1, 2, 3});
+            final Path imageFile = writeImages(directory.resolve("images"), 2, 2, new byte[][]{{1, 2, 3, 4}, {5, 6, 7, 8}});
+            final byte[] bytes = Files.readAllBytes(imageFile);
+            bytes[7] = 3;//announce one more image than written
+            Files.write(imageFile, bytes);
+            try (StreamingBatchSource source = StreamingBatchSource.open(labelFile, imageFile, 2, 1, CLASSES, 1)) {
+                MiniBatch batch;
+                while ((batch = source.next()) != null) {
+                    source.release(batch);
+                }
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testStreamBadMagic() throws IOException {
+        final Path directory = Files.createTempDirectory("idx");
+        try {
+            final Path labelFile = writeLabels(directory.resolve("labels"), new int[]{1});
+            StreamingBatchSource.open(labelFile, labelFile, 1, 1, CLASSES, 1).close();
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    private static Path gzip(final Path file) throws IOException {
+        final Path compressed = file.resolveSibling(file.getFileName() + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            Files.copy(file, out);
+        }
+        return compressed;
+    }
+}
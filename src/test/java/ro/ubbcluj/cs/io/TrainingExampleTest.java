@@ -1,5 +1,6 @@
 package ro.ubbcluj.cs.io;
 
+import libsvm.svm_node;
 import org.encog.ml.data.MLDataPair;
 import org.junit.Test;
 import org.nd4j.linalg.dataset.DataSet;
@@ -82,4 +83,15 @@ public class TrainingExampleTest {
         final int clazz = trainingExample.getClazz();
         assertEquals(clazz, 2, 0);
     }
+
+    @Test
+    public void testGetSvmNodesSkipsZeros() {
+        final TrainingExample trainingExample = new TrainingExample(new double[]{0, 0.5, 0, 0, 0.25}, new double[]{1, 0});
+        final svm_node[] nodes = trainingExample.getSvmNodes();
+        assertEquals(nodes.length, 2);
+        assertEquals(nodes[0].index, 1);
+        assertEquals(nodes[0].value, 0.5, 0);
+        assertEquals(nodes[1].index, 4);
+        assertEquals(nodes[1].value, 0.25, 0);
+    }
 }
@@ -0,0 +1,111 @@
+package ro.ubbcluj.cs.server;
+
+import org.junit.Test;
+import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class InferenceServerTest {
+
+    private static final Pattern CLASS = Pattern.compile("\"class\":(\\d+)");
+
+    private final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+            .havingSizes(InferenceServer.IMAGE_SIZE, 16, 10)
+            .withSeed(3)
+            .build();
+
+    private InferenceServer start() throws IOException {
+        final InferenceServer server = new InferenceServer(neuralNetwork, new InetSocketAddress("localhost", 0), 8, 200);
+        server.start();
+        return server;
+    }
+
+    @Test
+    public void testRawImages() throws IOException {
+        final byte[][] images = images(3);
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] image : images) {
+            body.write(image);
+        }
+        try (InferenceServer server = start()) {
+            assertClasses(images, post(server, body.toByteArray(), 200));
+            assertClasses(new byte[][]{images[1]}, post(server, images[1], 200));
+        }
+    }
+
+    @Test
+    public void testIdxImages() throws IOException {
+        final byte[][] images = images(5);
+        final ByteBuffer body = ByteBuffer.allocate(16 + images.length * InferenceServer.IMAGE_SIZE);
+        body.putInt(2051).putInt(images.length).putInt(InferenceServer.ROWS).putInt(InferenceServer.COLUMNS);
+        for (byte[] image : images) {
+            body.put(image);
+        }
+        try (InferenceServer server = start()) {
+            assertClasses(images, post(server, body.array(), 200));
+        }
+    }
+
+    @Test
+    public void testBadLength() throws IOException {
+        try (InferenceServer server = start()) {
+            post(server, new byte[InferenceServer.IMAGE_SIZE + 1], 400);
+        }
+    }
+
+    private void assertClasses(final byte[][] images, final String response) {
+        final Matcher matcher = CLASS.matcher(response);
+        for (byte[] image : images) {
+            matcher.find();
+            final double[] features = new double[InferenceServer.IMAGE_SIZE];
+            for (int j = 0; j < features.length; ++j) {
+                features[j] = (image[j] & 0xFF) / 255.0;
+            }
+            assertEquals(neuralNetwork.classify(features), Integer.parseInt(matcher.group(1)));
+        }
+        assertEquals(false, matcher.find());
+    }
+
+    private static String post(final InferenceServer server, final byte[] body, final int expectedStatus) throws IOException {
+        final URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/predict");
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body);
+        }
+        assertEquals(expectedStatus, connection.getResponseCode());
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (InputStream input = expectedStatus == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                response.write(buffer, 0, read);
+            }
+        }
+        return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] images(final int count) {
+        final Random random = new Random(count);
+        final byte[][] images = new byte[count][InferenceServer.IMAGE_SIZE];
+        for (byte[] image : images) {
+            random.nextBytes(image);
+        }
+        return images;
+    }
+}
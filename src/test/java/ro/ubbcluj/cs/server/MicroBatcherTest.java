@@ -0,0 +1,161 @@
+package ro.ubbcluj.cs.server;
+
+import org.junit.Test;
+import ro.ubbcluj.cs.ann.impl.Classifier;
+import ro.ubbcluj.cs.ann.impl.MathUtils;
+import ro.ubbcluj.cs.ann.impl.NeuralNetwork;
+import ro.ubbcluj.cs.ann.impl.NeuralNetworkBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MicroBatcherTest {
+
+    private final NeuralNetwork neuralNetwork = new NeuralNetworkBuilder()
+            .havingSizes(6, 5, 3)
+            .withSeed(11)
+            .build();
+
+    private static double[][] samples(final int count) {
+        final Random random = new Random(count);
+        final double[][] samples = new double[count][6];
+        for (double[] sample : samples) {
+            for (int j = 0; j < sample.length; ++j) {
+                sample[j] = random.nextDouble();
+            }
+        }
+        return samples;
+    }
+
+    @Test
+    public void testResultsMatchSingleSamples() throws Exception {
+        final double[][] samples = samples(200);
+        try (MicroBatcher batcher = new MicroBatcher(neuralNetwork, 16, 100, TimeUnit.MICROSECONDS)) {
+            final List<CompletableFuture<double[]>> outputs = new ArrayList<>();
+            final List<CompletableFuture<Integer>> classes = new ArrayList<>();
+            for (double[] sample : samples) {
+                outputs.add(batcher.submit(sample));
+                classes.add(batcher.classify(sample));
+            }
+            for (int i = 0; i < samples.length; ++i) {
+                assertArrayEquals(neuralNetwork.feedForward(samples[i]), outputs.get(i).get(), 1e-12);
+                assertEquals(neuralNetwork.classify(samples[i]), (int) classes.get(i).get());
+            }
+            assertEquals(400, batcher.getSampleCount());
+            assertTrue(batcher.getBatchCount() <= 400);
+            assertEquals(0, batcher.getQueueDepth());
+        }
+    }
+
+    @Test
+    public void testFlushesWhenFull() throws Exception {
+        final double[][] samples = samples(4);
+        try (MicroBatcher batcher = new MicroBatcher(neuralNetwork, 4, 1, TimeUnit.HOURS)) {
+            batcher.setAdaptive(false);
+            final List<CompletableFuture<double[]>> outputs = new ArrayList<>();
+            for (double[] sample : samples) {
+                outputs.add(batcher.submit(sample));
+            }
+            for (CompletableFuture<double[]> output : outputs) {
+                output.get(10, TimeUnit.SECONDS);
+            }
+            assertEquals(1, batcher.getBatchCount());
+
+            batcher.setMaxBatch(2);
+            final CompletableFuture<double[]> first = batcher.submit(samples[0]);
+            final CompletableFuture<double[]> second = batcher.submit(samples[1]);
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+            assertEquals(2, batcher.getBatchCount());
+            assertEquals(6, batcher.getSampleCount());
+        }
+    }
+
+    @Test
+    public void testFlushesOnDeadline() throws Exception {
+        try (MicroBatcher batcher = new MicroBatcher(neuralNetwork, 64, 1, TimeUnit.MILLISECONDS)) {
+            batcher.setAdaptive(false);
+            batcher.submit(samples(1)[0]).get(10, TimeUnit.SECONDS);
+            assertEquals(1, batcher.getBatchCount());
+            assertTrue(batcher.getAverageFill() < 0.1);
+        }
+    }
+
+    @Test
+    public void testAdaptiveSkipsWaitUnderLowLoad() throws Exception {
+        try (MicroBatcher batcher = new MicroBatcher(neuralNetwork, 64, 1, TimeUnit.HOURS)) {
+            batcher.submit(samples(1)[0]).get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadBatchSize() {
+        try (MicroBatcher batcher = new MicroBatcher(neuralNetwork, 4, 1, TimeUnit.MILLISECONDS)) {
+            batcher.setMaxBatch(0);
+        }
+    }
+
+    @Test
+    public void testSubmitRacingCloseNeverHangs() throws Exception {
+        final double[] sample = samples(1)[0];
+        for (int round = 0; round < 200; ++round) {
+            final MicroBatcher batcher = new MicroBatcher(neuralNetwork, 8, 10, TimeUnit.MICROSECONDS);
+            final List<CompletableFuture<double[]>> outputs = Collections.synchronizedList(new ArrayList<>());
+            final Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 50; ++i) {
+                    outputs.add(batcher.submit(sample));
+                }
+            });
+            submitter.start();
+            batcher.close();
+            submitter.join();
+            for (CompletableFuture<double[]> output : outputs) {
+                try {
+                    output.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testErrorFailsTheBatchAndKeepsServing() throws Exception {
+        final AtomicBoolean failNext = new AtomicBoolean(true);
+        final Classifier model = new Classifier() {
+            @Override
+            public double[] feedForward(final double[] inputs) {
+                if (failNext.getAndSet(false)) {
+                    throw new StackOverflowError();
+                }
+                return neuralNetwork.feedForward(inputs);
+            }
+
+            @Override
+            public int classify(final double[] inputs) {
+                return MathUtils.getResult(feedForward(inputs));
+            }
+        };
+        final double[] sample = samples(1)[0];
+        try (MicroBatcher batcher = new MicroBatcher(model, 1, 1, TimeUnit.MILLISECONDS)) {
+            try {
+                batcher.submit(sample).get(10, TimeUnit.SECONDS);
+                fail("The error should fail the request");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+            assertArrayEquals(neuralNetwork.feedForward(sample), batcher.submit(sample).get(10, TimeUnit.SECONDS), 1e-12);
+        }
+    }
+}
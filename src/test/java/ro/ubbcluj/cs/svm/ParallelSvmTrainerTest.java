@@ -0,0 +1,72 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+import org.junit.Test;
+import ro.ubbcluj.cs.io.Blobs;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ParallelSvmTrainerTest extends SvmTestSupport {
+
+    @Test
+    public void testModelMatchesSingleThreadedTraining() {
+        final Random random = new Random(17);
+        final svm_problem problem = blobs(random, 240, 4, 6);
+        final svm_problem test = blobs(random, 100, 4, 6);
+        final svm_parameter parameter = parameter();
+        parameter.nr_weight = 2;
+        parameter.weight_label = new int[]{2, 6};
+        parameter.weight = new double[]{2, 0.5};
+
+        final svm_model expected = svm.svm_train(problem, parameter);
+        for (int threads = 1; threads <= 3; threads += 2) {
+            final svm_model model = new ParallelSvmTrainer(threads, 10).train(problem, parameter);
+            assertEquals(expected.nr_class, model.nr_class);
+            assertEquals(expected.l, model.l);
+            assertArrayEquals(expected.label, model.label);
+            assertArrayEquals(expected.nSV, model.nSV);
+            assertArrayEquals(expected.sv_indices, model.sv_indices);
+            assertArrayEquals(expected.rho, model.rho, 0);
+            for (int i = 0; i < expected.sv_coef.length; ++i) {
+                assertArrayEquals(expected.sv_coef[i], model.sv_coef[i], 0);
+            }
+            for (int i = 0; i < expected.l; ++i) {
+                assertSame(expected.SV[i], model.SV[i]);
+            }
+            for (svm_node[] x : test.x) {
+                assertEquals(svm.svm_predict(expected, x), svm.svm_predict(model, x), 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsProbabilityEstimates() {
+        final svm_parameter parameter = parameter();
+        parameter.probability = 1;
+        new ParallelSvmTrainer(2, 10).train(blobs(new Random(1), 30, 3, 2), parameter);
+    }
+
+    private static svm_parameter parameter() {
+        return parameter(4, 0.5);
+    }
+
+    /**
+     * Overlapping clusters around random centers, labels 0..classes - 1 spread to 3 * c % 7
+     */
+    private static svm_problem blobs(final Random random, final int count, final int classes, final int features) {
+        final double[][] centers = Blobs.centers(new Random(classes * 31 + features), classes, features, 2);
+        final svm_problem problem = problem(Blobs.examples(random, centers, count, 0.6));
+        for (int i = 0; i < count; ++i) {
+            problem.y[i] = problem.y[i] * 3 % 7;
+        }
+        return problem;
+    }
+}
@@ -0,0 +1,91 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm;
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+import org.junit.Test;
+import ro.ubbcluj.cs.io.Dataset;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SvmBatchPredictorTest extends SvmTestSupport {
+
+    private static final int FEATURES = 20;
+    private static final int CLASSES = 4;
+
+    @Test
+    public void testPredictionsMatchSvmPredict() {
+        final Random random = new Random(23);
+        final SvmNodeEncoder encoder = new SvmNodeEncoder(FEATURES);
+        final svm_model model = svm.svm_train(encoder.problem(images(random, 300)), parameter());
+
+        final Dataset test = images(random, 333);
+        final int[] expected = new int[test.size()];
+        final double[][] inputs = new double[test.size()][FEATURES];
+        for (int i = 0; i < test.size(); ++i) {
+            expected[i] = (int) svm.svm_predict(model, encoder.encode(test, i));
+            test.getFeatures(i, inputs[i]);
+        }
+        for (int threads = 1; threads <= 3; ++threads) {
+            final SvmBatchPredictor predictor = new SvmBatchPredictor(model, FEATURES, threads);
+            assertArrayEquals(expected, predictor.predict(test));
+            assertArrayEquals(expected, predictor.predict(inputs));
+        }
+    }
+
+    @Test
+    public void testTwoClasses() {
+        final Random random = new Random(5);
+        final SvmNodeEncoder encoder = new SvmNodeEncoder(FEATURES);
+        final svm_problem problem = encoder.problem(images(random, 100));
+        for (int i = 0; i < problem.l; ++i) {
+            problem.y[i] = problem.y[i] < 2 ? -1 : 1;
+        }
+        final svm_model model = svm.svm_train(problem, parameter());
+        final Dataset test = images(random, 50);
+        final int[] predictions = new SvmBatchPredictor(model, FEATURES, 2).predict(test);
+        for (int i = 0; i < test.size(); ++i) {
+            assertEquals((int) svm.svm_predict(model, encoder.encode(test, i)), predictions[i]);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOtherKernels() {
+        final svm_parameter parameter = parameter();
+        parameter.kernel_type = svm_parameter.LINEAR;
+        final svm_model model = new svm_model();
+        model.param = parameter;
+        new SvmBatchPredictor(model, FEATURES, 1);
+    }
+
+    private static svm_parameter parameter() {
+        return parameter(8, 0.1);
+    }
+
+    /**
+     * Noisy copies of one random image per class, about half of the pixels zero
+     */
+    private static Dataset images(final Random random, final int count) {
+        final Random prototypes = new Random(99);
+        final int[][] prototype = new int[CLASSES][FEATURES];
+        for (int[] image : prototype) {
+            for (int j = 0; j < FEATURES; ++j) {
+                image[j] = prototypes.nextBoolean() ? 0 : prototypes.nextInt(256);
+            }
+        }
+        final byte[] pixels = new byte[count * FEATURES];
+        final byte[] labels = new byte[count];
+        for (int i = 0; i < count; ++i) {
+            labels[i] = (byte) random.nextInt(CLASSES);
+            for (int j = 0; j < FEATURES; ++j) {
+                final int pixel = prototype[labels[i]][j] + random.nextInt(161) - 80;
+                pixels[i * FEATURES + j] = (byte) Math.max(0, Math.min(255, pixel));
+            }
+        }
+        return new Dataset(pixels, labels, FEATURES, CLASSES, 1);
+    }
+}
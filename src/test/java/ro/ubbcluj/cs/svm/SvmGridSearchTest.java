@@ -0,0 +1,73 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm_model;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+import org.junit.Test;
+import ro.ubbcluj.cs.io.Blobs;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SvmGridSearchTest extends SvmTestSupport {
+
+    @Test
+    public void testSearchIsReproducibleAndPrunes() {
+        final svm_problem problem = blobs(new Random(8), 150);
+        final List<SvmGridSearch.Candidate> candidates = SvmGridSearch.grid(new double[]{0.01, 1, 16}, new double[]{1e-4, 0.5});
+
+        final List<SvmGridSearch.Score> all = new SvmGridSearch(4, 1, 10, 1, 3).search(problem, parameter(), candidates);
+        for (SvmGridSearch.Score score : all) {
+            assertEquals(4, score.getFolds());
+        }
+        for (int i = 1; i < all.size(); ++i) {
+            assertTrue(all.get(i - 1).getAccuracy() >= all.get(i).getAccuracy());
+        }
+        assertTrue(all.get(0).getAccuracy() > 0.9);
+        assertTrue(all.get(all.size() - 1).getAccuracy() < 0.6);
+
+        final List<SvmGridSearch.Score> pruned = new SvmGridSearch(4, 3, 10, 0.5, 3).search(problem, parameter(), candidates);
+        assertEquals(candidates.size(), pruned.size());
+        assertEquals(all.get(0).getCandidate(), pruned.get(0).getCandidate());
+        assertEquals(all.get(0).getAccuracy(), pruned.get(0).getAccuracy(), 0);
+        int folds = 0;
+        for (SvmGridSearch.Score score : pruned) {
+            folds += score.getFolds();
+        }
+        assertEquals(6 + 3 + 2 + 1, folds);
+        assertEquals(1, pruned.get(pruned.size() - 1).getFolds());
+    }
+
+    @Test
+    public void testTrainBestCandidate() {
+        final svm_problem problem = blobs(new Random(4), 120);
+        final SvmGridSearch search = new SvmGridSearch(3, 2, 10, 0.5, 1);
+        final List<SvmGridSearch.Score> scores = search.search(problem, parameter(),
+                SvmGridSearch.random(5, 0.1, 100, 0.01, 1, new Random(2)));
+        final SvmGridSearch.Candidate best = scores.get(0).getCandidate();
+        final svm_model model = search.train(problem, parameter(), best);
+        assertEquals(best.getC(), model.param.C, 0);
+        assertEquals(best.getGamma(), model.param.gamma, 0);
+        assertEquals(3, model.nr_class);
+        assertTrue(SvmGridSearch.report(scores).split("\n").length == scores.size() + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsSingleFold() {
+        new SvmGridSearch(1, 1, 10, 1, 0);
+    }
+
+    private static svm_parameter parameter() {
+        return parameter(1, 1);//C and gamma come from the candidates
+    }
+
+    /**
+     * Three well separated clusters in the plane
+     */
+    private static svm_problem blobs(final Random random, final int count) {
+        return problem(Blobs.examples(random, new double[][]{{0, 0}, {3, 3}, {6, 12}}, count, 0.5));
+    }
+}
@@ -0,0 +1,50 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm_node;
+import libsvm.svm_problem;
+import org.junit.Test;
+import ro.ubbcluj.cs.io.Dataset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SvmNodeEncoderTest {
+
+    @Test
+    public void testEncodingMatchesTrainingExample() {
+        final byte[] pixels = {0, 0, 7, 0, (byte) 255, 0, 3, 0,
+                1, 0, 0, 0, 0, 0, 0, (byte) 128};
+        final Dataset dataset = new Dataset(pixels, new byte[]{4, 9}, 8, 10, 1);
+        final SvmNodeEncoder encoder = new SvmNodeEncoder(8);
+
+        final svm_problem problem = encoder.problem(dataset);
+        assertEquals(2, problem.l);
+        for (int i = 0; i < problem.l; ++i) {
+            final svm_node[] expected = dataset.getTrainingExample(i).getSvmNodes();
+            assertEquals(expected.length, problem.x[i].length);
+            for (int k = 0; k < expected.length; ++k) {
+                assertEquals(expected[k].index, problem.x[i][k].index);
+                assertEquals(expected[k].value, problem.x[i][k].value, 0);
+            }
+            assertEquals(dataset.getLabel(i), problem.y[i], 0);
+        }
+        assertEquals(3, problem.x[0].length);
+        assertEquals(2, problem.x[1].length);
+    }
+
+    @Test
+    public void testNodesAreShared() {
+        final byte[] pixels = {0, 5, 5, 0, 0, 5};
+        final SvmNodeEncoder encoder = new SvmNodeEncoder(3);
+        final svm_node[] first = encoder.encode(pixels, 0);
+        final svm_node[] second = encoder.encode(pixels, 3);
+        assertEquals(2, first.length);
+        assertEquals(1, second.length);
+        assertSame(first[1], second[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFeatureCountMismatch() {
+        new SvmNodeEncoder(4).problem(new Dataset(new byte[6], new byte[2], 3, 10, 1));
+    }
+}
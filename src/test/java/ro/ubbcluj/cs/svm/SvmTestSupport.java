@@ -0,0 +1,52 @@
+package ro.ubbcluj.cs.svm;
+
+import libsvm.svm;
+import libsvm.svm_node;
+import libsvm.svm_parameter;
+import libsvm.svm_problem;
+import org.junit.BeforeClass;
+import ro.ubbcluj.cs.io.TrainingExample;
+
+import java.util.List;
+
+/**
+ * Common setup of the libsvm tests
+ */
+public abstract class SvmTestSupport {
+
+    @BeforeClass
+    public static void silenceLibsvm() {
+        svm.svm_set_print_string_function(s -> {
+        });
+    }
+
+    /**
+     * @return RBF classification parameters with a small kernel cache
+     */
+    static svm_parameter parameter(final double c, final double gamma) {
+        final svm_parameter parameter = new svm_parameter();
+        parameter.svm_type = svm_parameter.C_SVC;
+        parameter.kernel_type = svm_parameter.RBF;
+        parameter.C = c;
+        parameter.gamma = gamma;
+        parameter.cache_size = 10;
+        parameter.eps = 0.001;
+        parameter.shrinking = 1;
+        return parameter;
+    }
+
+    /**
+     * @return problem of the examples, labelled by their class
+     */
+    static svm_problem problem(final List<TrainingExample> examples) {
+        final svm_problem problem = new svm_problem();
+        problem.l = examples.size();
+        problem.x = new svm_node[problem.l][];
+        problem.y = new double[problem.l];
+        for (int i = 0; i < problem.l; ++i) {
+            problem.x[i] = examples.get(i).getSvmNodes();
+            problem.y[i] = examples.get(i).getClazz();
+        }
+        return problem;
+    }
+}